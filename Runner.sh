@@ -1,9 +1,11 @@
 #!/bin/bash
 
+# Any jars in lib, such as the SQLite JDBC driver, are put on the class path,
+# and any arguments are passed to java, for example:
+# bash Runner.sh -Dvoxspell.stats=database
+
 # For UG4
-/usr/lib/jvm/jdk1.8.0_91/bin/java -cp VOXSPELLPROJECT.jar spellAid.ui.SpellingAid
+/usr/lib/jvm/jdk1.8.0_91/bin/java "$@" -cp "VOXSPELLPROJECT.jar:lib/*" spellAid.ui.SpellingAid
 
 # For my computer
-/usr/lib/jvm/jdk1.8.0_102/bin/java -cp VOXSPELLPROJECT.jar spellAid.ui.SpellingAid
-
-
+/usr/lib/jvm/jdk1.8.0_102/bin/java "$@" -cp "VOXSPELLPROJECT.jar:lib/*" spellAid.ui.SpellingAid
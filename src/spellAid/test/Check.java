@@ -0,0 +1,24 @@
+package spellAid.test;
+
+/**
+ * The checks used by the tests that run without a GUI. A failed check throws
+ * an AssertionError, so the test stops and exits with a non-zero status.
+ * 
+ * @author Luke Tudor
+ */
+public class Check {
+
+	private Check() {}
+
+	public static void that(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void equal(Object expected, Object actual, String message) {
+		if (expected == null ? actual != null : !expected.equals(actual)) {
+			throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package spellAid.test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import spellAid.util.io.CorruptFileException;
+import spellAid.util.io.IOHelper;
+
+/**
+ * Checks that files written with a checksum are read back as written, that
+ * damaged or cut short ones are found, and that files written without one
+ * are read exactly as they are.
+ */
+public class TestChecksummedFiles {
+
+	public static void main(String[] args) throws Exception {
+		IOHelper ioHelper = new IOHelper();
+		Path dir = Files.createTempDirectory("checksums");
+		Path file = dir.resolve("scores.txt");
+		try {
+			List<String> lines = Arrays.asList("alice\t5", "bob\t7");
+			ioHelper.overwriteFile(lines, file, true);
+			Check.equal(lines, ioHelper.readChecksummedLines(file), "the lines written are read back");
+
+			ioHelper.removeLineFromFile("alice\t5", file);
+			Check.equal(Arrays.asList("bob\t7"), ioHelper.readChecksummedLines(file),
+					"removing a line keeps a valid checksum");
+
+			// Cut short, losing the footer
+			List<String> raw = Files.readAllLines(file, StandardCharsets.UTF_8);
+			Files.write(file, raw.subList(0, raw.size() - 1), StandardCharsets.UTF_8);
+			checkCorrupt(ioHelper, file, "a file that lost its footer");
+
+			// A line changed after it was written
+			ioHelper.overwriteFile(lines, file, true);
+			raw = new ArrayList<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+			raw.set(1, "alice\t1");
+			Files.write(file, raw, StandardCharsets.UTF_8);
+			checkCorrupt(ioHelper, file, "a changed line");
+
+			// A file written without a checksum keeps every line, even ones that look like a footer
+			List<String> legacy = Arrays.asList("#checksummed?", "carol\t00:01:30", "#crc32 12345678");
+			Files.write(file, legacy, StandardCharsets.UTF_8);
+			Check.equal(legacy, ioHelper.readChecksummedLines(file), "a file with no marker is read as it is");
+			Check.equal(legacy, ioHelper.readAllLines(file), "readAllLines() returns every line");
+
+			Files.delete(file);
+			Check.that(ioHelper.readChecksummedLines(file).isEmpty(), "a missing file has no lines");
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(dir);
+		}
+	}
+
+	private static void checkCorrupt(IOHelper ioHelper, Path file, String description) {
+		try {
+			ioHelper.readChecksummedLines(file);
+		} catch (CorruptFileException e) {
+			return;
+		}
+		throw new AssertionError(description + " is not found to be damaged");
+	}
+}
@@ -0,0 +1,76 @@
+package spellAid.test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.SortedMap;
+
+import spellAid.util.io.DatabaseStatsRepository;
+import spellAid.util.io.HighScores;
+import spellAid.util.io.SublistStatistics;
+import spellAid.util.io.SublistStatistics.Answer;
+import spellAid.util.io.SublistStatistics.Result;
+
+/**
+ * Checks that answers and high scores saved in the database are read back by
+ * a new repository, as they would be the next time the application is run.
+ * The SQLite JDBC driver must be on the class path, see the README.
+ */
+public class TestDatabaseStatsRepository {
+
+	private static final String LIST = "user_lists/no-such-test-list.txt";
+
+	private static final String SUBLIST = "Level 1";
+
+	public static void main(String[] args) throws Exception {
+		Check.that(DatabaseStatsRepository.isAvailable(), "the SQLite JDBC driver is on the class path");
+
+		Path database = Files.createTempFile("statistics", ".db");
+		try {
+			long now = System.currentTimeMillis();
+
+			DatabaseStatsRepository first = new DatabaseStatsRepository(database);
+			SublistStatistics statistics = first.forSublist(LIST, SUBLIST);
+			Check.equal(0, statistics.getCount("cat", Result.MASTERED), "a new database has no answers");
+			statistics.recordAll(Arrays.asList(
+					new Answer("cat", Result.MASTERED, now - 1000),
+					new Answer("cat", Result.MASTERED, now),
+					new Answer("dog", Result.FAILED, now)));
+			statistics.recordAll(Arrays.asList(new Answer("dog", Result.FAULTED, now)));
+			Check.equal(2, statistics.getCount("cat", Result.MASTERED), "answers are counted as recorded");
+			first.getHighScores(LIST, SUBLIST).add("tester", 5_000_000_000L);
+			first.getHighScores(LIST, SUBLIST).add("tester", 3_000_000_000L);
+			first.closeAll();
+			HighScores.evictAll();
+
+			DatabaseStatsRepository second = new DatabaseStatsRepository(database);
+			SublistStatistics read = second.forSublist(LIST, SUBLIST);
+			Check.equal(2, read.getCount("cat", Result.MASTERED), "mastered answers are read back");
+			Check.equal(1, read.getCount("dog", Result.FAILED), "failed answers are read back");
+			Check.equal(1, read.getCount("dog", Result.FAULTED), "faulted answers are read back");
+			Check.equal(0, read.getCount("cow", Result.FAILED), "a word never answered has no answers");
+			Check.equal(now, read.getLastAnswered("cat"), "the time last answered is read back");
+
+			SortedMap<LocalDate, int[]> days = read.getDailyCounts(LocalDate.now().minusDays(1));
+			int[] total = new int[3];
+			for (int[] counts : days.values()) {
+				for (int i = 0; i < total.length; i++) {
+					total[i] += counts[i];
+				}
+			}
+			Check.equal(Arrays.toString(new int[] {2, 1, 1}), Arrays.toString(total),
+					"the answers of the last two days are counted by day");
+			Check.that(read.getDailyCounts(LocalDate.now().plusDays(1)).isEmpty(), "no answers are in the future");
+
+			Check.equal(2, second.getHighScores(LIST, SUBLIST).getTop("tester").size(),
+					"the high scores are read back");
+			Check.equal(3_000_000_000L, second.getHighScores(LIST, SUBLIST).getTop().get(0).getNanos(),
+					"the fastest time comes first");
+			second.closeAll();
+			HighScores.evictAll();
+		} finally {
+			Files.deleteIfExists(database);
+		}
+	}
+}
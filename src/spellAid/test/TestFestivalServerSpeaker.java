@@ -0,0 +1,40 @@
+package spellAid.test;
+
+import javafx.application.Application;
+import javafx.scene.Node;
+import javafx.stage.Stage;
+import spellAid.ui.speaker.AsynchronousComponentEnabler;
+import spellAid.ui.speaker.FestivalServerSpeaker;
+
+public class TestFestivalServerSpeaker extends Application {
+
+	private static final String[] LINES = {"please spell the", "correct... please spell it", "a"};
+
+	private int linesSpoken;
+
+	@Override
+	public void start(Stage primaryStage) throws Exception {
+		FestivalServerSpeaker speaker =
+				new FestivalServerSpeaker(new AsynchronousComponentEnabler(new Node[0], false), "voices/nzvoice.scm") {
+
+			@Override
+			protected void asynchronousFinish() {
+				linesSpoken++;
+				Check.that(getMetrics().getCount() >= linesSpoken,
+						"every line spoken was synthesised by the server pool");
+				if (linesSpoken == LINES.length) {
+					System.exit(0);
+				}
+				speak(LINES[linesSpoken]);
+			}
+
+		};
+
+		speaker.speak(LINES[0]);
+	}
+	
+	public static void main(String[] args) {
+		launch(args);
+	}
+
+}
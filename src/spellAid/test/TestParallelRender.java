@@ -0,0 +1,56 @@
+package spellAid.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import spellAid.util.video.FFmpegRender;
+import spellAid.util.video.ParallelRender;
+import spellAid.util.video.VideoRender;
+import spellAid.util.video.VideoSettings;
+
+/**
+ * Checks that a video rendered in parallel segments is rendered, and comes
+ * out the same length as the video rendered by one process.
+ */
+public class TestParallelRender {
+
+	private static final String SOURCE = "videos/big_buck_bunny_1_minute.mp4";
+
+	public static void main(String[] args) throws IOException {
+		VideoSettings settings = new VideoSettings(1.5, 0.1, 2, true, 24);
+		Path single = Paths.get("videos", "test_single.mp4");
+		Path parallel = Paths.get("videos", "test_parallel.mp4");
+		try {
+			render(new FFmpegRender(SOURCE, settings.toOptions(), single.toString()));
+			render(new ParallelRender(SOURCE, settings.toOptions(), parallel.toString()));
+
+			double singleSeconds = probeDuration(single);
+			Check.that(Math.abs(probeDuration(parallel) - singleSeconds) < 0.5,
+					"the parallel render is as long as the render by one process");
+		} finally {
+			Files.deleteIfExists(single);
+			Files.deleteIfExists(parallel);
+		}
+	}
+
+	private static void render(VideoRender render) {
+		Check.that(render.run(progress -> {}), render.getOutput() + " is rendered");
+		Check.that(Files.isRegularFile(render.getOutput()), render.getOutput() + " exists");
+	}
+
+	// Uses ffprobe to find the length of the video in seconds
+	private static double probeDuration(Path video) throws IOException {
+		Process ffprobe = new ProcessBuilder("ffprobe", "-v", "error", "-show_entries",
+				"format=duration", "-of", "default=noprint_wrappers=1:nokey=1", video.toString())
+				.redirectErrorStream(true).start();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(ffprobe.getInputStream(), StandardCharsets.UTF_8))) {
+			return Double.parseDouble(reader.readLine().trim());
+		}
+	}
+}
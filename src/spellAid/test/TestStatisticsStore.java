@@ -0,0 +1,105 @@
+package spellAid.test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import spellAid.util.io.StatisticsStore;
+import spellAid.util.io.SublistStatistics.Answer;
+import spellAid.util.io.SublistStatistics.Result;
+
+/**
+ * Checks that answers kept only in the write-ahead log are read back when the
+ * store is opened again, that folding the log into the records neither loses
+ * nor double counts an answer, even when a crash leaves the folded log
+ * behind, and that a half-written answer at the end of the log is ignored.
+ */
+public class TestStatisticsStore {
+
+	public static void main(String[] args) throws Exception {
+		Path dir = Files.createTempDirectory("statistics");
+		String hiddenFile = dir.resolve(".Level 1").toString();
+		Path logFile = dir.resolve(".Level 1.log");
+		try {
+			StatisticsStore store = StatisticsStore.forSublist(hiddenFile);
+			store.recordAll(answers("apple", Result.MASTERED, 3, 1000));
+			store.recordAll(answers("pear", Result.FAILED, 2, 2000));
+			store.record("apple", Result.FAULTED);
+
+			// Closed without folding the log, as if the application had crashed
+			StatisticsStore.discardAll();
+			store = StatisticsStore.forSublist(hiddenFile);
+			checkCounts(store, "apple", 3, 1, 0, "answers replayed from the log");
+			checkCounts(store, "pear", 0, 0, 2, "answers replayed from the log");
+			Check.equal(2001L, store.getLastAnswered("pear"), "the time replayed from the log");
+
+			// A crash after the records were written but before the new log was started
+			StatisticsStore.discardAll();
+			Path oldLog = dir.resolve("old.log");
+			Files.copy(logFile, oldLog);
+			store = StatisticsStore.forSublist(hiddenFile);
+			store.compact();
+			StatisticsStore.discardAll();
+			Files.move(oldLog, logFile, StandardCopyOption.REPLACE_EXISTING);
+			store = StatisticsStore.forSublist(hiddenFile);
+			checkCounts(store, "apple", 3, 1, 0, "a folded log that was left behind");
+			checkCounts(store, "pear", 0, 0, 2, "a folded log that was left behind");
+
+			// Half an answer at the end of the log, cut short by a crash
+			StatisticsStore.discardAll();
+			Files.write(logFile, new byte[] {0, 0, 0, 0, 2}, StandardOpenOption.APPEND);
+			store = StatisticsStore.forSublist(hiddenFile);
+			checkCounts(store, "apple", 3, 1, 0, "a log with a half-written answer");
+			store.record("apple", Result.FAILED);
+			StatisticsStore.discardAll();
+			store = StatisticsStore.forSublist(hiddenFile);
+			checkCounts(store, "apple", 3, 1, 1, "an answer written after the half-written one");
+
+			// Enough answers to fold the log while recording
+			long logBytes = Files.size(logFile);
+			store.recordAll(answers("plum", Result.MASTERED, 1000, 3000));
+			Check.that(Files.size(logFile) < logBytes,
+					"the log is folded once it has enough answers");
+			StatisticsStore.discardAll();
+			store = StatisticsStore.forSublist(hiddenFile);
+			checkCounts(store, "plum", 1000, 0, 0, "answers folded into the records");
+			checkCounts(store, "apple", 3, 1, 1, "answers folded into the records");
+			checkCounts(store, "pear", 0, 0, 2, "answers folded into the records");
+
+			// closeAll() folds what is left in the log
+			store.record("pear", Result.MASTERED);
+			StatisticsStore.closeAll();
+			store = StatisticsStore.forSublist(hiddenFile);
+			checkCounts(store, "pear", 1, 0, 2, "answers folded when the store was closed");
+			checkCounts(store, "plum", 1000, 0, 0, "answers folded when the store was closed");
+		} finally {
+			StatisticsStore.discardAll();
+			try (Stream<Path> files = Files.list(dir)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+
+	// Answers to the word, each a millisecond after the one before
+	private static List<Answer> answers(String word, Result result, int count, long firstTime) {
+		List<Answer> answers = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			answers.add(new Answer(word, result, firstTime + i));
+		}
+		return answers;
+	}
+
+	private static void checkCounts(StatisticsStore store, String word, int mastered, int faulted,
+			int failed, String description) {
+		Check.equal(mastered, store.getCount(word, Result.MASTERED), description + ": " + word + " mastered");
+		Check.equal(faulted, store.getCount(word, Result.FAULTED), description + ": " + word + " faulted");
+		Check.equal(failed, store.getCount(word, Result.FAILED), description + ": " + word + " failed");
+	}
+}
@@ -0,0 +1,91 @@
+package spellAid.test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import spellAid.util.io.SublistStatistics;
+import spellAid.util.schedule.WordScheduler;
+
+/**
+ * Checks that the scheduler puts the words got wrong before the words got
+ * right, whether or not the statistics know when they were answered.
+ */
+public class TestWordScheduler {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	public static void main(String[] args) {
+		Set<String> words = new LinkedHashSet<>(Arrays.asList("mastered", "failed", "faulted"));
+
+		for (long seed = 0; seed < 20; seed++) {
+			// Counts read from old text files have no times
+			FixedStatistics untimed = new FixedStatistics();
+			untimed.set("mastered", 5, 0, 0, 0);
+			untimed.set("failed", 0, 0, 3, 0);
+			untimed.set("faulted", 1, 2, 0, 0);
+			checkOrder(WordScheduler.forStatistics(untimed, words, new SplittableRandom(seed)), "no times", true);
+
+			// With times, both words got wrong are in the lowest box and due straight away
+			long now = System.currentTimeMillis();
+			FixedStatistics timed = new FixedStatistics();
+			timed.set("mastered", 5, 0, 0, now - DAY);
+			timed.set("failed", 0, 0, 3, now - DAY);
+			timed.set("faulted", 1, 2, 0, now - DAY);
+			checkOrder(WordScheduler.forStatistics(timed, words, new SplittableRandom(seed)), "times", false);
+		}
+
+		// A word mastered before, failed now, comes before a word only ever mastered
+		FixedStatistics statistics = new FixedStatistics();
+		statistics.set("mastered", 5, 0, 0, System.currentTimeMillis() - DAY);
+		statistics.set("failed", 5, 0, 0, System.currentTimeMillis() - DAY);
+		WordScheduler scheduler = WordScheduler.forStatistics(statistics,
+				new LinkedHashSet<>(Arrays.asList("mastered", "failed")), new SplittableRandom(1));
+		scheduler.record("failed", SublistStatistics.Result.FAILED);
+		scheduler.record("failed", SublistStatistics.Result.FAILED);
+		scheduler.record("failed", SublistStatistics.Result.FAILED);
+		Check.equal("failed", scheduler.nextWords(1)[0], "a word just failed comes first");
+
+		Check.equal(2, scheduler.nextWords(10).length, "no more words than the sublist has");
+	}
+
+	private static void checkOrder(WordScheduler scheduler, String description, boolean failedFirst) {
+		List<String> order = Arrays.asList(scheduler.nextWords(3));
+		Check.equal("mastered", order.get(2), "the word never got wrong comes last, " + description);
+		if (failedFirst) {
+			Check.equal("failed", order.get(0), "the word always failed comes first, " + description);
+		}
+	}
+
+	// Statistics that never change, with the counts and times given
+	private static class FixedStatistics implements SublistStatistics {
+
+		private final Map<String, int[]> counts = new HashMap<>();
+
+		private final Map<String, Long> times = new HashMap<>();
+
+		void set(String word, int mastered, int faulted, int failed, long lastAnswered) {
+			counts.put(word, new int[] {mastered, faulted, failed});
+			times.put(word, lastAnswered);
+		}
+
+		@Override
+		public void recordAll(List<Answer> answers) {}
+
+		@Override
+		public int getCount(String word, Result result) {
+			int[] wordCounts = counts.get(word);
+			return wordCounts == null ? 0 : wordCounts[result.ordinal()];
+		}
+
+		@Override
+		public long getLastAnswered(String word) {
+			Long time = times.get(word);
+			return time == null ? 0 : time;
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package spellAid.ui;
 
+import java.util.Arrays;
 import java.util.List;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -14,7 +16,10 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import spellAid.util.io.ExtendedIOHelper;
+import spellAid.util.io.AsyncIOHelper;
+import spellAid.util.io.HighScores;
+import spellAid.util.io.HighScores.Score;
+import spellAid.util.io.StatsRepository;
 import spellAid.util.string.URLString;
 import spellAid.util.string.UnqualifiedFileString;
 
@@ -30,8 +35,6 @@ public class DisplayHighScore extends Application {
 	
 	private static final String STYLESHEET = new URLString("style/mainstyle.css").getURL();
 	
-	private ExtendedIOHelper ioHelper;
-	
 	private ComboBox<String> sublistCombo;
 	
 	private Label headingLabel;
@@ -52,8 +55,6 @@ public class DisplayHighScore extends Application {
 	public DisplayHighScore(Scene parent, String currentWordList, String currentSubList, List<String> sublists) {
 		super();
 		
-		ioHelper = new ExtendedIOHelper();
-		
 		headingLabel = new Label();
 		
 		scoreLabel = new Label();
@@ -87,30 +88,53 @@ public class DisplayHighScore extends Application {
 		scene = new Scene(root);
 	}
 	
-	// This method updates the labels to use the correct word list and sub list for display
+	/*
+	 * This method updates the labels to use the correct word list and sub list for display.
+	 * The scores are fetched on the writer thread, which only reads the scores file
+	 * the first time, and the labels are updated afterwards.
+	 */
 	private void changeDisplay(String currentWordList, String currentSubList) {
 		String unqWordList = new UnqualifiedFileString(currentWordList).getUnqualifiedFile();
-		List<String> scores = ioHelper.readAllLines("user_lists/." 
-				+ unqWordList + "." + currentSubList + ".score.txt");
+		String userName = System.getProperty("user.name", "Unknown");
+		AsyncIOHelper.getDefault().supply(() -> {
+			HighScores highScores = StatsRepository.getDefault().getHighScores(currentWordList, currentSubList);
+			return Arrays.asList(highScores.getTop(), highScores.getTop(userName));
+		}).thenAccept(boards -> Platform.runLater(() -> 
+				showScores(unqWordList, currentSubList, boards.get(0), boards.get(1))));
+	}
 
+	private void showScores(String unqWordList, String currentSubList, List<Score> overall, List<Score> yours) {
 		String heading = "Fastest Times to Complete\nList: " 
 				+ unqWordList + "\nSublist: " + currentSubList + "\n";
 		
 		StringBuilder score = new StringBuilder();
-		for (int i = 0; i < 3; i++) {
-			String line = null;
-			try {
-				String[] chunks = scores.get(i).split("\t");
-				line = " User name: " + chunks[0] + "\t" + "Time: " + chunks[1];
-			} catch (Exception e) {
-				line = " --";
-			}
-			score.append(i+1 + "." + line + "\n");
-		}
+		appendBoard(score, overall, true);
+		score.append("\nYour Fastest Times\n");
+		appendBoard(score, yours, false);
 		
 		headingLabel.setText(heading);
 		
 		scoreLabel.setText(score.toString());
 	}
 
+	// Adds a line for each place on the board, with "--" for empty places
+	private void appendBoard(StringBuilder text, List<Score> board, boolean showUser) {
+		for (int i = 0; i < HighScores.DEFAULT_PLACES; i++) {
+			String line = " --";
+			if (i < board.size()) {
+				Score score = board.get(i);
+				line = (showUser ? " User name: " + score.getUser() + "\t" : " ")
+						+ "Time: " + formatTime(score.getNanos());
+			}
+			text.append(i+1 + "." + line + "\n");
+		}
+	}
+
+	// Formats the time as hh:mm:ss.SSS
+	private static String formatTime(long nanos) {
+		long millis = nanos / 1_000_000;
+		long seconds = millis / 1000;
+		return String.format("%02d:%02d:%02d.%03d", seconds/3600, seconds/60%60, seconds%60, millis%1000);
+	}
+
 }
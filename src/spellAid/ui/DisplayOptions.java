@@ -21,7 +21,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import spellAid.ui.speaker.AsynchronousComponentEnabler;
-import spellAid.ui.speaker.ConcurrentAsynchronousSpeaker;
+import spellAid.ui.speaker.FestivalServerSpeaker;
 import spellAid.ui.speaker.Speaker;
 import spellAid.util.string.URLString;
 import spellAid.util.string.UnqualifiedFileString;
@@ -108,7 +108,7 @@ public abstract class DisplayOptions extends Application {
 		// Allows the user to test the chosen voice to see if they like it
 		Button testVoice = new Button("Test Voice");
 		testVoice.setOnAction(e -> {
-			Speaker speaker = new ConcurrentAsynchronousSpeaker(
+			Speaker speaker = new FestivalServerSpeaker(
 					new AsynchronousComponentEnabler(
 							new Node[]{testVoice}, true), getVoice(voiceCombo.getSelectionModel().getSelectedItem())) {
 				@Override
@@ -1,17 +1,24 @@
 package spellAid.ui;
 
-import java.nio.file.FileSystems;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.SortedMap;
 
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -20,16 +27,21 @@ import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import spellAid.util.io.ExtendedIOHelper;
-import spellAid.util.string.HiddenFileString;
+import spellAid.util.io.AsyncIOHelper;
+import spellAid.util.io.StatsRepository;
+import spellAid.util.io.SublistStatistics;
+import spellAid.util.io.SublistStatistics.Result;
+import spellAid.util.io.WordList;
+import spellAid.util.schedule.WordScheduler;
 import spellAid.util.string.URLString;
 /**
  * Displays the statistics window and allows users to select 
@@ -43,20 +55,43 @@ public class DisplayStatistics extends Application {
 	
 	private static final String STYLESHEET = new URLString("style/mainstyle.css").getURL();
 
+	// The number of days, up to today, whose answers are added up under the table
+	private static final int RECENT_DAYS = 7;
+
 	private final ComboBox<String> sublistSelectCombo;
 	
 	private TableView<WordStats> table;
 
+	// Every attempted word of the sublist shown, in the order they are sorted
+	private final ObservableList<WordStats> rows;
+
+	// The rows that match the filters, which is what the table shows
+	private final FilteredList<WordStats> filteredRows;
+
+	// Word -> its row, so that a row can be updated without being made again
+	private final Map<String, WordStats> rowsByWord;
+
+	private final TextField wordFilter;
+
+	private final Spinner<Integer> failedFilter;
+
+	// The answers of the last few days, for repositories that keep their times
+	private final Label recentCounts;
+
+	// The sublist the rows belong to
+	private String shownSublist;
+
 	private Scene scene;
 
 	private Stage primaryStage;
 
-	private List<Set<String>> wordlist;
-
-	private ExtendedIOHelper ioHelper;
+	private WordList wordlist;
 
 	private String currentList;
 
+	// Incremented for every update, so that only the latest one is shown
+	private int statisticsRequests;
+
 	@Override
 	public void start(Stage primaryStage) {
 		this.primaryStage = primaryStage;
@@ -67,17 +102,33 @@ public class DisplayStatistics extends Application {
 	/*
 	 * Constructs a table with the currently selected list as the data model.
 	 */
-	public DisplayStatistics(Scene parent, List<Set<String>> wordlist, List<String> sublists, String currentList, int currentLevel) {
+	public DisplayStatistics(Scene parent, WordList wordlist, List<String> sublists, String currentList, int currentLevel) {
 		super();
 
 		this.wordlist = wordlist;
 		this.currentList = currentList;
 
-		ioHelper = new ExtendedIOHelper();
-
 		sublistSelectCombo = new ComboBox<>(FXCollections.observableList(sublists));
 
-		table = new TableView<>();
+		rows = FXCollections.observableArrayList();
+		filteredRows = new FilteredList<>(rows);
+		rowsByWord = new HashMap<>();
+
+		table = new TableView<>(filteredRows);
+		table.setSortPolicy(t -> {
+			sortRows();
+			return true;
+		});
+
+		wordFilter = new TextField();
+		wordFilter.setPromptText("Find a word");
+		wordFilter.textProperty().addListener((observable, oldText, newText) -> updateFilter());
+
+		failedFilter = new Spinner<>(0, Integer.MAX_VALUE, 0);
+		failedFilter.setPrefWidth(80);
+		failedFilter.valueProperty().addListener((observable, oldValue, newValue) -> updateFilter());
+
+		recentCounts = new Label();
 
 		sublistSelectCombo.setOnAction(e -> {
 			if(e.getSource() == sublistSelectCombo){
@@ -91,23 +142,30 @@ public class DisplayStatistics extends Application {
 		GridPane controls = new GridPane();
 		controls.setHgap(5);
 		controls.add(sublistSelectCombo, 0, 0);
+		controls.add(wordFilter, 1, 0);
+		controls.add(new Label("Failed at least:"), 2, 0);
+		controls.add(failedFilter, 3, 0);
 		
-		// Setting the columns of the table to use the nested "row" class, 'WordStats' as the data model
+		/*
+		 * Setting the columns of the table to use the nested "row" class, 'WordStats' as the data model.
+		 * The counts are only wrapped for the rows on screen, and the table is sorted by sortRows(),
+		 * which compares the counts as ints.
+		 */
 		TableColumn<WordStats, String> wordNameCol = new TableColumn<>("Word");
 		wordNameCol.setMinWidth(200);
-		wordNameCol.setCellValueFactory(new PropertyValueFactory<WordStats, String>("word"));
+		wordNameCol.setCellValueFactory(c -> new ReadOnlyStringWrapper(c.getValue().getWord()));
 		
-		TableColumn<WordStats, String> masteredCol = new TableColumn<>("Mastered");
+		TableColumn<WordStats, Number> masteredCol = new TableColumn<>("Mastered");
 		masteredCol.setMinWidth(150);
-		masteredCol.setCellValueFactory(new PropertyValueFactory<WordStats, String>("timesMastered"));
+		masteredCol.setCellValueFactory(c -> new ReadOnlyIntegerWrapper(c.getValue().getTimesMastered()));
 		
-		TableColumn<WordStats, String> faultedCol = new TableColumn<>("Faulted");
+		TableColumn<WordStats, Number> faultedCol = new TableColumn<>("Faulted");
 		faultedCol.setMinWidth(150);
-		faultedCol.setCellValueFactory(new PropertyValueFactory<WordStats, String>("timesFaulted"));
+		faultedCol.setCellValueFactory(c -> new ReadOnlyIntegerWrapper(c.getValue().getTimesFaulted()));
 		
-		TableColumn<WordStats, String> failedCol = new TableColumn<>("Failed");
+		TableColumn<WordStats, Number> failedCol = new TableColumn<>("Failed");
 		failedCol.setMinWidth(150);
-		failedCol.setCellValueFactory(new PropertyValueFactory<WordStats, String>("timesFailed"));
+		failedCol.setCellValueFactory(c -> new ReadOnlyIntegerWrapper(c.getValue().getTimesFailed()));
 		
 		table.setPlaceholder(new Label("No statistics to display"));
 		table.getColumns().addAll(Arrays.asList(wordNameCol, masteredCol, faultedCol, failedCol));
@@ -117,6 +175,7 @@ public class DisplayStatistics extends Application {
 		grid.setVgap(5);
 		grid.add(controls, 0, 0);
 		grid.add(table, 0, 1);
+		grid.add(recentCounts, 0, 2);
 		grid.setAlignment(Pos.CENTER);
 		
 		Button clearStatistics = new Button("Delete All Statistics");
@@ -142,49 +201,150 @@ public class DisplayStatistics extends Application {
 		scene = new Scene(root);
 	}
 
+	/*
+	 * Counts the statistics for the sublist on the persistence writer thread,
+	 * so that opening a large or old sublist does not freeze the window, and
+	 * so that every answer saved before now is counted. The counts are then
+	 * shown in the table. If another sublist is chosen before the counts are
+	 * ready, the old counts are thrown away.
+	 */
 	private void updateStatisticsDisplay(int levelToBeShown){
-		/*
-		 * This is a local class that is used as a helper object to count the 
-		 * number of times a word appears in a list.
-		 */
-		class WordCounter {
-			private int wordCount(String word, List<String> list){
-				int numWords = 0;
-				for (String entry : list){
-					if (word.equals(entry)){
-						numWords++;
-					}
-				}
-				return numWords;
-			}
-		}
-		
-		String hiddenFile = new HiddenFileString(currentList.substring(0, currentList.length() - 4) + "." 
-				+ sublistSelectCombo.getSelectionModel().getSelectedItem()).getHiddenFileString();
-		
-		List<String> masteredList = ioHelper.readAllLines(hiddenFile + ".mastered.txt");
-		List<String> faultedList = ioHelper.readAllLines(hiddenFile + ".faulted.txt");
-		List<String> failedList = ioHelper.readAllLines(hiddenFile + ".failed.txt");
+		String sublist = sublistSelectCombo.getSelectionModel().getSelectedItem();
+		String list = currentList;
 		
-		ObservableList<WordStats> data = FXCollections.observableArrayList();
+		Set<String> words = wordlist.getWords(levelToBeShown);
 
-		WordCounter wordCounter = new WordCounter();	
+		int request = ++statisticsRequests;
+
+		AsyncIOHelper.getDefault().supply(() -> {
+			SublistStatistics statistics = StatsRepository.getDefault().forSublist(list, sublist);
+
+			// Three counts per word, in the order of the words
+			int[] counts = new int[words.size() * 3];
+			int i = 0;
+			for (String word : words){
+				counts[i++] = statistics.getCount(word, Result.MASTERED);
+				counts[i++] = statistics.getCount(word, Result.FAULTED);
+				counts[i++] = statistics.getCount(word, Result.FAILED);
+			}
+			return counts;
+		}).thenAccept(counts -> Platform.runLater(() -> {
+			if (request == statisticsRequests) {
+				showCounts(sublist, words, counts);
+			}
+		}));
+
+		LocalDate since = LocalDate.now().minusDays(RECENT_DAYS - 1);
+		AsyncIOHelper.getDefault().supply(() -> StatsRepository.getDefault()
+				.forSublist(list, sublist).getDailyCounts(since))
+				.thenAccept(days -> Platform.runLater(() -> {
+			if (request == statisticsRequests) {
+				showRecentCounts(days);
+			}
+		}));
+	}
+
+	// Adds up the answers of the last few days, or shows nothing if there were none
+	private void showRecentCounts(SortedMap<LocalDate, int[]> days) {
+		if (days.isEmpty()) {
+			recentCounts.setText("");
+			return;
+		}
+		int[] total = new int[3];
+		for (int[] counts : days.values()) {
+			for (int i = 0; i < total.length; i++) {
+				total[i] += counts[i];
+			}
+		}
+		recentCounts.setText(String.format("In the last %d days: %d mastered, %d faulted and %d failed, on %d %s",
+				RECENT_DAYS, total[0], total[1], total[2], days.size(), days.size() == 1 ? "day" : "days"));
+	}
 
-		for (String word : wordlist.get(levelToBeShown)){
+	/*
+	 * Updates the rows to the new counts. If the same sublist is shown again,
+	 * only the rows whose counts have changed are touched.
+	 */
+	private void showCounts(String sublist, Set<String> words, int[] counts) {
+		if (!sublist.equals(shownSublist)) {
+			rows.clear();
+			rowsByWord.clear();
+			shownSublist = sublist;
+		}
 
-			int numMastered = wordCounter.wordCount(word, masteredList);
-			int numFaulted = wordCounter.wordCount(word, faultedList);
-			int numFailed = wordCounter.wordCount(word, failedList);
+		List<WordStats> added = new ArrayList<>();
+		Set<WordStats> removed = new HashSet<>();
+		boolean changed = false;
+		int i = 0;
+		for (String word : words){
+			int numMastered = counts[i++];
+			int numFaulted = counts[i++];
+			int numFailed = counts[i++];
 
 			/*
 			 * Only attempted words are added to the statistics, hence the if
 			 * statement that evaluates as false if a word has never been tested.
 			 */
-			if (numMastered != 0 || numFaulted != 0 || numFailed != 0){
-				data.add(new WordStats(word, numMastered, numFaulted, numFailed));
+			WordStats row = rowsByWord.get(word);
+			if (numMastered == 0 && numFaulted == 0 && numFailed == 0) {
+				if (row != null) {
+					rowsByWord.remove(word);
+					removed.add(row);
+				}
+			} else if (row == null) {
+				row = new WordStats(word, numMastered, numFaulted, numFailed);
+				rowsByWord.put(word, row);
+				added.add(row);
+			} else if (row.setCounts(numMastered, numFaulted, numFailed)) {
+				changed = true;
+			}
+		}
+		if (!removed.isEmpty()) {
+			rows.removeAll(removed);
+		}
+		rows.addAll(added);
+
+		if (changed || !added.isEmpty()) {
+			updateFilter();
+			sortRows();
+		}
+	}
+
+	// Sorts the rows by the table's sort columns, comparing counts as ints
+	private void sortRows() {
+		Comparator<WordStats> order = null;
+		for (TableColumn<WordStats, ?> column : table.getSortOrder()) {
+			Comparator<WordStats> byColumn;
+			switch (table.getColumns().indexOf(column)) {
+			case 1:
+				byColumn = Comparator.comparingInt(WordStats::getTimesMastered);
+				break;
+			case 2:
+				byColumn = Comparator.comparingInt(WordStats::getTimesFaulted);
+				break;
+			case 3:
+				byColumn = Comparator.comparingInt(WordStats::getTimesFailed);
+				break;
+			default:
+				byColumn = Comparator.comparing(WordStats::getWord);
 			}
+			if (column.getSortType() == TableColumn.SortType.DESCENDING) {
+				byColumn = byColumn.reversed();
+			}
+			order = order == null ? byColumn : order.thenComparing(byColumn);
+		}
+		if (order != null) {
+			FXCollections.sort(rows, order);
 		}
-		table.setItems(data);
+		// Rows updated in place are drawn again with their new counts
+		table.refresh();
+	}
+
+	// Shows only the rows containing the word typed with at least the failures chosen
+	private void updateFilter() {
+		String text = wordFilter.getText().trim().toLowerCase();
+		int minimumFailed = failedFilter.getValue();
+		filteredRows.setPredicate(row -> row.getTimesFailed() >= minimumFailed
+				&& (text.isEmpty() || row.getWord().toLowerCase().contains(text)));
 	}
 	
 	/*
@@ -203,79 +363,59 @@ public class DisplayStatistics extends Application {
 			
 			Optional<ButtonType> reply = alert.showAndWait();
 			if (reply.get() == yes) {
-				List<String> statsFiles = getAllStatsFiles();
-				ExtendedIOHelper ioHelper = new ExtendedIOHelper();
-				for (String file : statsFiles) {
-					ioHelper.deleteIfExists("user_lists/" + file);
-				}
+				// Deleted on the writer thread, after any answers still being saved
+				WordScheduler.discardAll();
+				AsyncIOHelper.getDefault().execute(() -> StatsRepository.getDefault().deleteAll());
 				updateStatisticsDisplay(sublistSelectCombo.getSelectionModel().getSelectedIndex());
 			}
 		});
 	}
 	
-	/*
-	 * Abstraction to get all hidden files in the directory easily.
-	 */
-	private List<String> getAllStatsFiles() {
-		String[] lists = FileSystems.getDefault().getPath("user_lists").toFile().list();
-		List<String> files = new ArrayList<>();
-		for (String file : lists) {
-			if (file.startsWith(".")) {
-				files.add(file);
-			}
-		}
-		return files;
-	}
-	
 	/**
-	 * Simple class used to represent a row in the table.
+	 * Simple class used to represent a row in the table. The counts are kept
+	 * as ints, and are only wrapped in properties for the rows on screen.
 	 * 
 	 * @author Luke Tudor
 	 */
 	public static class WordStats {
-		private SimpleStringProperty word;
-		private SimpleStringProperty timesMastered;
-		private SimpleStringProperty timesFaulted;
-		private SimpleStringProperty timesFailed;
+		private final String word;
+		private int timesMastered;
+		private int timesFaulted;
+		private int timesFailed;
 		
 		public WordStats(String word, int timesMastered, int timesFaulted, int timesFailed) {
-			this.word = new SimpleStringProperty(word);
-			this.timesMastered = new SimpleStringProperty(timesMastered + "");
-			this.timesFaulted = new SimpleStringProperty(timesFaulted + "");
-			this.timesFailed = new SimpleStringProperty(timesFailed + "");
+			this.word = word;
+			this.timesMastered = timesMastered;
+			this.timesFaulted = timesFaulted;
+			this.timesFailed = timesFailed;
 		}
 
-		// A lot of getters and setters used by the JavaFX framework to correctly display a table
 		public String getWord() {
-			return word.get();
-		}
-
-		public void setWord(String word) {
-			this.word.set(word);
+			return word;
 		}
 		
 		public int getTimesMastered() {
-			return Integer.parseInt(timesMastered.get());
-		}
-
-		public void setTimesMastered(String timesMastered) {
-			this.timesMastered.set(timesMastered);
+			return timesMastered;
 		}
 		
 		public int getTimesFaulted() {
-			return Integer.parseInt(timesFaulted.get());
-		}
-		
-		public void setTimesFaulted(String timesFaulted) {
-			this.timesMastered.set(timesFaulted);
+			return timesFaulted;
 		}
 
 		public int getTimesFailed() {
-			return Integer.parseInt(timesFailed.get());
+			return timesFailed;
 		}
-		
-		public void setTimesFailed(String timesFailed) {
-			this.timesFailed.set(timesFailed);
+
+		/*
+		 * Sets all three counts, and returns whether any of them changed.
+		 */
+		public boolean setCounts(int timesMastered, int timesFaulted, int timesFailed) {
+			boolean changed = this.timesMastered != timesMastered
+					|| this.timesFaulted != timesFaulted || this.timesFailed != timesFailed;
+			this.timesMastered = timesMastered;
+			this.timesFaulted = timesFaulted;
+			this.timesFailed = timesFailed;
+			return changed;
 		}
 	}
 }
@@ -1,6 +1,8 @@
 package spellAid.ui;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +17,8 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
@@ -22,8 +26,12 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import spellAid.ui.speaker.AsynchronousComponentEnabler;
-import spellAid.ui.speaker.ConcurrentAsynchronousSpeaker;
+import spellAid.ui.speaker.FestivalServerSpeaker;
 import spellAid.ui.speaker.Speaker;
+import spellAid.ui.speaker.SpeechCache;
+import spellAid.ui.speaker.SpeechPrefetcher;
+import spellAid.ui.speaker.SpeechScheduler;
+import spellAid.ui.speaker.WavePlayer;
 import spellAid.ui.video.VideoEditor;
 import spellAid.util.string.URLString;
 
@@ -44,6 +52,12 @@ public abstract class Quiz extends Application {
 	private static final String BEGIN = "Begin Test";
 	private static final String REPEAT = "Repeat word";
 
+	// These fields are the lines spoken by the quiz.
+	private static final String PLEASE_SPELL = "please spell ";
+	private static final String CORRECT = "correct";
+	private static final String INCORRECT = "incorrect";
+	private static final String TRY_AGAIN = "incorrect, try once more. ";
+
 	private static final String STYLESHEET = new URLString("style/mainstyle.css").getURL();
 
 	// These fields are the GUI components used to display the test.
@@ -56,6 +70,7 @@ public abstract class Quiz extends Application {
 
 	// These fields are used to run the test.
 	private Speaker speaker;
+	private SpeechPrefetcher prefetcher;
 	private AsynchronousComponentEnabler enabledList;
 	private String[] testList;
 	private int currentTestNum;
@@ -97,12 +112,12 @@ public abstract class Quiz extends Application {
 				repeatButton,
 				testButton
 		}, true);
-		changeVoice(currentSpeech);
 		// Sets all the testing fields.
 		testList = list;
 		currentTestNum = 0;
 		hasChance = true;
 		testResults = new boolean[list.length];
+		changeVoice(currentSpeech);
 
 		repeatButton.setOnAction(e -> repeatPressed());
 		repeatButton.setDisable(true);
@@ -132,7 +147,16 @@ public abstract class Quiz extends Application {
 		selectVoice.getSelectionModel().select(currentSpeech);
 		selectVoice.setOnAction(e -> changeVoice(selectVoice.getSelectionModel().getSelectedItem()));
 		
-		quizPanel = new VBox(selectVoice, testbox);
+		// Allows user to change how loud the voice is
+		Slider volume = new Slider(0, 1, WavePlayer.getDefault().getVolume());
+		volume.valueProperty().addListener((observable, oldValue, newValue) ->
+			WavePlayer.getDefault().setVolume(newValue.doubleValue()));
+
+		HBox voiceBox = new HBox(selectVoice, new Label("Volume:"), volume);
+		voiceBox.setAlignment(Pos.CENTER);
+		voiceBox.setSpacing(5);
+
+		quizPanel = new VBox(voiceBox, testbox);
 		quizPanel.setPadding(new Insets(5));
 		quizPanel.setSpacing(5);
 
@@ -148,10 +172,19 @@ public abstract class Quiz extends Application {
 				alert.getButtonTypes().setAll(yes, no);
 				alert.setTitle("Alert!");
 				alert.setContentText("Are you sure you want to go back to the menu?");
+
+				// The voice waits while the user decides
+				WavePlayer.getDefault().pause();
 				Optional<ButtonType> reply = alert.showAndWait();
 				if (reply.get() == yes) {
-					primaryStage.setScene(parent);
+					// Stopped before the player is resumed, so the paused line is never heard again
 					speaker.sock();
+					WavePlayer.getDefault().resume();
+					primaryStage.setScene(parent);
+					prefetcher.cancel();
+					quizEnded();
+				} else {
+					WavePlayer.getDefault().resume();
 				}
 			})
 		);
@@ -223,7 +256,8 @@ public abstract class Quiz extends Application {
 			scorePanel.startTimer();
 			testButton.setText(ENTER);
 			enabledList.setShouldComponentBeEnabled(repeatButton, true);
-			speaker.speak("please spell " + testList[currentTestNum]);
+			speaker.speak(PLEASE_SPELL + testList[currentTestNum]);
+			prefetchNextLines();
 			textField.requestFocus();
 			textField.selectAll();
 		}
@@ -237,6 +271,40 @@ public abstract class Quiz extends Application {
 		textField.selectAll();
 	}
 
+	/*
+	 * Returns the lines that are spoken when a word is first asked or repeated,
+	 * so that they can be rendered before the quiz needs them.
+	 */
+	static List<String> getPromptLines(Collection<String> words) {
+		List<String> lines = new ArrayList<>();
+		for (String word : words) {
+			lines.add(PLEASE_SPELL + word);
+			lines.add(word);
+		}
+		return lines;
+	}
+
+	/*
+	 * Starts rendering every line that could be spoken after the user answers
+	 * the current word, so that the next line can be played straight away.
+	 */
+	private void prefetchNextLines() {
+		if (currentTestNum == testList.length) {
+			return;
+		}
+		List<String> lines = new ArrayList<>();
+		lines.add(TRY_AGAIN + testList[currentTestNum]);
+		if (currentTestNum + 1 < testList.length) {
+			String nextWord = testList[currentTestNum + 1];
+			lines.add(CORRECT + "... " + PLEASE_SPELL + nextWord);
+			lines.add(INCORRECT + "... " + PLEASE_SPELL + nextWord);
+		} else {
+			lines.add(CORRECT);
+			lines.add(INCORRECT);
+		}
+		prefetcher.prefetch(lines);
+	}
+
 	/*
 	 * Helper method for subclasses to find out which word was last tested.
 	 */
@@ -255,7 +323,10 @@ public abstract class Quiz extends Application {
 	
 	protected abstract String selectVoice(String selection);
 	
-	protected abstract void updateHighScore(String time);
+	protected abstract void updateHighScore(long elapsedNanos);
+
+	// Invoked when the quiz is finished or the user goes back to the menu
+	protected abstract void quizEnded();
 
 	/*
 	 * Invoked when the quiz is complete
@@ -263,6 +334,7 @@ public abstract class Quiz extends Application {
 	private void quizComplete() {
 
 		scorePanel.stopTimer();
+		quizEnded();
 
 		// number of correct words
 		int numCorrect = 0;
@@ -274,7 +346,7 @@ public abstract class Quiz extends Application {
 
 		if (numCorrect == testList.length) {
 			
-			updateHighScore(scorePanel.getTime());
+			updateHighScore(scorePanel.getElapsedNanos());
 
 			Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
 
@@ -334,9 +406,10 @@ public abstract class Quiz extends Application {
 		enabledList.setShouldComponentBeEnabled(repeatButton, true);
 		textField.clear();
 		if (currentTestNum != testList.length)
-			speaker.speak("correct... please spell " + testList[currentTestNum]);
+			speaker.speak(CORRECT + "... " + PLEASE_SPELL + testList[currentTestNum]);
 		else
-			speaker.speak("correct");
+			speaker.speak(CORRECT);
+		prefetchNextLines();
 		scorePanel.updateScore(true);
 		scorePanel.oneLess();
 	}
@@ -345,7 +418,7 @@ public abstract class Quiz extends Application {
 	// correctly.
 	private void firstTimeFailure(){
 		failedFirstTime();
-		speaker.speak("incorrect, try once more. " + testList[currentTestNum]);
+		speaker.speak(TRY_AGAIN + testList[currentTestNum]);
 		hasChance = false;
 	}
 
@@ -361,9 +434,10 @@ public abstract class Quiz extends Application {
 		currentTestNum++;
 		hasChance = true;
 		if (currentTestNum != testList.length)
-			speaker.speak("correct... please spell " + testList[currentTestNum]);
+			speaker.speak(CORRECT + "... " + PLEASE_SPELL + testList[currentTestNum]);
 		else
-			speaker.speak("correct");
+			speaker.speak(CORRECT);
+		prefetchNextLines();
 		scorePanel.updateScore(true);
 		scorePanel.oneLess();
 	}
@@ -380,9 +454,10 @@ public abstract class Quiz extends Application {
 		currentTestNum++;
 		hasChance = true;
 		if (currentTestNum != testList.length)
-			speaker.speak("incorrect... please spell " + testList[currentTestNum]);
+			speaker.speak(INCORRECT + "... " + PLEASE_SPELL + testList[currentTestNum]);
 		else
-			speaker.speak("incorrect");
+			speaker.speak(INCORRECT);
+		prefetchNextLines();
 		scorePanel.updateScore(false);
 		scorePanel.oneLess();
 	}
@@ -398,8 +473,25 @@ public abstract class Quiz extends Application {
 	
 	// Changes the voice by changing the speaker object
 	private void changeVoice(String voice) {
+		// Lines still waiting to be spoken in the old voice are not spoken
+		if (speaker != null) {
+			SpeechScheduler.getDefault().cancel(speaker);
+		}
+
 		String scriptFile = selectVoice(voice);
-		speaker = new ConcurrentAsynchronousSpeaker(enabledList, scriptFile) {
+		// The words of this quiz are rendered before the rest of the sublist
+		SpeechCache.getDefault().warmFirst(scriptFile,
+				getPromptLines(Arrays.asList(testList)));
+
+		// Lines being rendered for the old voice are no longer needed
+		if (prefetcher != null) {
+			prefetcher.cancel();
+		}
+		prefetcher = new SpeechPrefetcher(scriptFile);
+		if (testButton.getText().equals(ENTER)) {
+			prefetchNextLines();
+		}
+		speaker = new FestivalServerSpeaker(enabledList, scriptFile) {
 
 			@Override
 			protected void asynchronousFinish() {
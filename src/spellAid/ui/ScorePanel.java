@@ -79,4 +79,8 @@ public class ScorePanel extends GridPane {
 	public String getTime() {
 		return stopwatch.getText();
 	}
+	
+	public long getElapsedNanos() {
+		return stopwatch.getElapsedNanos();
+	}
 }
@@ -5,8 +5,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
@@ -30,11 +28,16 @@ import javafx.scene.layout.GridPane;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Stage;
+import spellAid.ui.speaker.SpeechCache;
+import spellAid.util.io.AsyncIOHelper;
 import spellAid.util.io.ExtendedIOHelper;
-import spellAid.util.string.HiddenFileString;
+import spellAid.util.io.QuizResultRecorder;
+import spellAid.util.io.StatsRepository;
+import spellAid.util.io.SublistStatistics.Result;
+import spellAid.util.io.StatisticsWatcher;
+import spellAid.util.io.WordList;
+import spellAid.util.schedule.WordScheduler;
 import spellAid.util.string.URLString;
-import spellAid.util.string.UniqueRandomListMaker;
-import spellAid.util.string.UnqualifiedFileString;
 
 /**
  * The SpellingAid program creates a GUI which implements the functionality
@@ -73,9 +76,15 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 	 */
 	private ExtendedIOHelper ioHelper;
 
+	/*
+	 * This field runs file IO on a background thread, so that saving answers
+	 * and scores never freezes the GUI.
+	 */
+	private AsyncIOHelper persistence;
+
 	private String[] wordlists;
 
-	private List<Set<String>> wordlist;
+	private WordList wordlist;
 	private List<String> sublists;
 
 	private String currentSubList;
@@ -96,6 +105,11 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 
 		ioHelper = new ExtendedIOHelper();
 
+		persistence = AsyncIOHelper.getDefault();
+
+		// Statistics kept in memory are read again if another program changes them
+		StatisticsWatcher.getDefault().watch("user_lists");
+
 		wordlists = FileSystems.getDefault().getPath("user_lists").toFile().list();
 
 		currentWordList = "user_lists/NZCER-spelling-lists.txt";
@@ -104,6 +118,8 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 
 		currentSpeech = "NZ voice";
 
+		warmSpeechCache();
+
 		newQuiz = new Button("New Quiz");
 		viewStatistics = new Button("View Statistics");
 		viewHighScore = new Button("View High Scores");
@@ -180,41 +196,66 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 	/*
 	 * This method sets up and initiates a new spelling quiz with the 
 	 * help of some collaborating classes.
+	 *
+	 * The words tested are chosen by the sublist's scheduler, which puts
+	 * the words the user gets wrong first. The scheduler is made from the
+	 * sublist's statistics on the writer thread, as reading them may take a
+	 * while, and the quiz is started once it is ready. The button is disabled
+	 * meanwhile so that only one quiz is started, and enabled again whether or
+	 * not the scheduler could be made.
 	 */
 	private void runNewQuiz() {
 		// This line converts the word list to a set.
-		Set<String> uniqueLines = wordlist.get(sublists.indexOf(currentSubList));
+		Set<String> uniqueLines = wordlist.getWords(sublists.indexOf(currentSubList));
+
+		String list = currentWordList;
+		String sublist = currentSubList;
+
+		newQuiz.setDisable(true);
+		persistence.supply(() -> WordScheduler.forSublist(list, sublist, uniqueLines))
+				.whenComplete((scheduler, failure) -> Platform.runLater(() -> {
+					newQuiz.setDisable(false);
+					if (failure == null) {
+						startQuiz(list, sublist, scheduler);
+					} else {
+						Alert alert = new Alert(Alert.AlertType.ERROR);
+						alert.setTitle("Alert!");
+						alert.setContentText("The quiz could not be started because the statistics of "
+								+ sublist + " could not be read.");
+						alert.showAndWait();
+					}
+				}));
+	}
 
+	/*
+	 * Starts a quiz of the words due soonest in the scheduler.
+	 */
+	private void startQuiz(String list, String sublist, WordScheduler scheduler) {
 		int numTests = 10;
 
-		/*
-		 * A list of random selections is created from the list of unique lines
-		 * by a helper object that creates random lists.
-		 */
-		UniqueRandomListMaker urlm = new UniqueRandomListMaker();
-		String[] testList = urlm.getUniqueList(uniqueLines, numTests);
+		String[] testList = scheduler.nextWords(numTests);
 
-		String hiddenFile = new HiddenFileString(currentWordList.substring(0, currentWordList.length() - 4) 
-				+ "." + currentSubList).getHiddenFileString();
+		// The answers of the quiz are saved together rather than one by one
+		QuizResultRecorder recorder = new QuizResultRecorder(list, sublist);
 
 		/*
 		 * The Quiz class, which creates a GUI to run the quiz is being
 		 * implemented by an anonymous class that implements the "New Quiz"
-		 * functionality. Some methods are overridden so that words can be
-		 * written to the corresponding files.
+		 * functionality. Some methods are overridden so that answers can be
+		 * recorded in the statistics store.
 		 */
 		Application newQuiz = new Quiz(scene, testList, currentSpeech) {
 
 			@Override
 			protected void passedFirstTime() {
-				ioHelper.addLineToFile(getLastTestedWord(),
-						hiddenFile + ".mastered.txt");
+				recorder.record(getLastTestedWord(), Result.MASTERED);
+				scheduler.record(getLastTestedWord(), Result.MASTERED);
 			}
 
 			@Override
 			protected void passedSecondTime() {
-				ioHelper.addLineToFile(getLastTestedWord(),
-						hiddenFile + ".faulted.txt");
+				recorder.record(getLastTestedWord(), Result.FAULTED);
+				scheduler.record(getLastTestedWord(), Result.FAULTED);
 			}
 
 			@Override
@@ -222,8 +263,13 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 
 			@Override
 			protected void failedSecondTime() {
-				ioHelper.addLineToFile(getLastTestedWord(),
-						hiddenFile + ".failed.txt");
+				recorder.record(getLastTestedWord(), Result.FAILED);
+				scheduler.record(getLastTestedWord(), Result.FAILED);
+			}
+
+			@Override
+			protected void quizEnded() {
+				recorder.commit();
 			}
 
 			@Override
@@ -237,37 +283,15 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 				}
 			}
 
-			// This method updates the current high score for a particular sublist
-			// This is done by creating a new file that contains the user name and the time taken
-			// The file is ordered by the time taken
+			// This method adds the time taken to the high scores of a particular sublist,
+			// which keep the fastest times of each user and of everyone
 			@Override
-			protected void updateHighScore(String time) {
-				String unqWordList = new UnqualifiedFileString(currentWordList).getUnqualifiedFile();
-				String fileName = "user_lists/." + unqWordList + "." + currentSubList + ".score.txt";
-				List<String> scores = ioHelper.readAllLines(fileName);
-				String userName = "Unknown";
-				try {
-					userName = System.getProperty("user.name");
-				} catch (Exception e) {}
-				String line = userName + "\t" + time ;
-
-				int i;
-				for (i = 0; i < 3; i++) {
-					String oldTime = null;
-					try {
-						oldTime = scores.get(i).split("\t")[1];
-					} catch (Exception e) {
-						break;
-					}
-					if (time.compareTo(oldTime) < 0 ) {
-						break;
-					}
-				}
-				scores.add(i, line);
-				try {
-					scores.remove(3);
-				} catch (Exception e) {}
-				ioHelper.overwriteFile(scores, fileName);
+			protected void updateHighScore(long elapsedNanos) {
+				String userName = System.getProperty("user.name", "Unknown");
+
+				// The scores are updated and saved on the writer thread
+				persistence.execute(() -> StatsRepository.getDefault()
+						.getHighScores(list, sublist).add(userName, elapsedNanos));
 			}
 
 		};
@@ -313,11 +337,13 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 				} else if(voice.equals("USA voice")) {
 					currentSpeech="USA voice";
 				}
+				warmSpeechCache();
 			}
 
 			@Override
 			protected void changeSublist(String sublist) {
 				currentSubList = sublist;
+				warmSpeechCache();
 			}
 
 			@Override
@@ -329,6 +355,7 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 					currentSubList = sublists.get(0);
 				} catch (Exception e) {}
 				sublistCombo.getSelectionModel().select(currentSubList);
+				warmSpeechCache();
 			}
 
 			/*
@@ -396,31 +423,40 @@ public class SpellingAid extends Application implements EventHandler<ActionEvent
 		alert.setContentText("Are you sure you want to quit?");
 		Optional<ButtonType> reply = alert.showAndWait();
 		if (reply.get() == yes) {
+			// Everything still being saved is written, and the statistics are
+			// flushed to disk, before the application closes
+			QuizResultRecorder.commitAll();
+			persistence.execute(() -> StatsRepository.getDefault().closeAll());
+			persistence.shutdown();
 			primaryStage.hide();
 		}
 	}
 
-	// Helper method to create the current word list
+	/*
+	 * Helper method to create the current word list. Only the sublist names
+	 * are read here, the words are read when a sublist is used.
+	 */
 	private void createWordList() {
-		List<String> unfilteredList = ioHelper.readAllLines(currentWordList);
-		wordlist = new ArrayList<Set<String>>();
-		sublists = new ArrayList<String>();
-
-		int listNumber = -1;
-		for (String line : unfilteredList) {
-			if (line.startsWith("%")) {
-				listNumber++;
-				wordlist.add(new HashSet<String>());
-				sublists.add(line.substring(1, line.length()));
-			} else {
-				wordlist.get(listNumber).add(line);
-			}
-		}
+		wordlist = WordList.open(currentWordList);
+		sublists = wordlist.getSublists();
 		try {
 			currentSubList = sublists.get(0);
 		} catch (Exception e) {}
 	}
 
+	/*
+	 * Renders the words of the current sublist with the current voice in the
+	 * background, so that they can be spoken without waiting for festival.
+	 */
+	private void warmSpeechCache() {
+		int index = sublists.indexOf(currentSubList);
+		if (index < 0) {
+			return;
+		}
+		String scriptFile = currentSpeech.equals("USA voice") ? USVOICE : NZVOICE;
+		SpeechCache.getDefault().warm(scriptFile, Quiz.getPromptLines(wordlist.getWords(index)));
+	}
+
 	// Helper method to determine if a list is valid
 	private boolean isListValid(File file) {
 		if (file == null) {
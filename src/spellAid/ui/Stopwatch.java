@@ -15,6 +15,8 @@ public class Stopwatch extends Label {
 	
 	private long startTime;
 	
+	private long stopTime;
+	
 	private Timeline timer;
 
 	public Stopwatch() {
@@ -26,12 +28,19 @@ public class Stopwatch extends Label {
 	
 	public void start() {
 		startTime = System.nanoTime();
+		stopTime = 0;
 		timer.play();
 	}
 	
 	public void stop() {
+		stopTime = System.nanoTime();
 		timer.stop();
 	}
+	
+	// The exact time taken, whereas the time shown is rounded down to seconds
+	public long getElapsedNanos() {
+		return (stopTime == 0 ? System.nanoTime() : stopTime) - startTime;
+	}
 
 	// Format the time according to hh:mm:ss
 	private void updateTime() {
@@ -1,13 +1,25 @@
 package spellAid.ui.speaker;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
+import spellAid.util.process.ProcessTree;
 
 /**
- * This class uses thread worker to speak a particular line without freezing the
- * GUI.
+ * This class uses the shared speech scheduler to speak a particular line
+ * without freezing the GUI.
  * 
  * @author Luke Tudor
  *
@@ -18,10 +30,17 @@ public abstract class ConcurrentAsynchronousSpeaker implements Speaker {
 
 	private AsynchronousComponentEnabler componentsList;
 
+	// Every process this speaker has started that is still running
+	private Set<Process> processes;
+
+	// Incremented by sock() so that lines being spoken know they were stopped
+	private volatile int cancellations;
+
 	public ConcurrentAsynchronousSpeaker(AsynchronousComponentEnabler list,
 			String file) {
 		componentsList = list;
 		scriptFile = file;
+		processes = Collections.synchronizedSet(new HashSet<>());
 	}
 
 	@Override
@@ -29,61 +48,127 @@ public abstract class ConcurrentAsynchronousSpeaker implements Speaker {
 		
 		componentsList.disableAllComponents();
 
-		Thread worker = new Thread(new Runnable() {
-
-			@Override
-			public void run() {
-				// Give line to script
-				String cmd = "echo '\"" + line + "\"' | festival -b " 
-				+ scriptFile;
-
-				ProcessBuilder processBuilder =
-						new ProcessBuilder("bash", "-c", cmd);
-
-				try {
-
-					Process process = processBuilder.start();
-
-					// Wait for festival to finish speaking before continuing.
-					final int exitVal = process.waitFor();
-
-					Platform.runLater(new Runnable() {
-
-						@Override
-						public void run() {
-
-							// If the bash command failed,
-							// then bash or festival is not installed.
-							if (exitVal != 0){
-								Alert errorMessage = new Alert(Alert.AlertType.ERROR);
-								errorMessage.setTitle("Alert!");
-								errorMessage.setContentText(
-										"Please install bash and/or festival"
-												+ " to run this application");
-								errorMessage.showAndWait();
-							}
-							// apply all asynchronously assigned states
-							componentsList.applyAllRecommendedStates();
-							asynchronousFinish();
-						}
-					});
-				} catch (InterruptedException | IOException e) {}
+		// Lines are spoken one at a time, in order, by the shared scheduler
+		SpeechScheduler.getDefault().schedule(this, line, () -> sayUnlessStopped(line),
+				exitVal -> Platform.runLater(() -> {
+
+			// If the command failed,
+			// then festival is not installed.
+			if (exitVal != 0){
+				Alert errorMessage = new Alert(Alert.AlertType.ERROR);
+				errorMessage.setTitle("Alert!");
+				errorMessage.setContentText(
+						"Please install festival"
+								+ " to run this application");
+				errorMessage.showAndWait();
 			}
-		});
+			// apply all asynchronously assigned states
+			componentsList.applyAllRecommendedStates();
+			asynchronousFinish();
+		}));
+	}
 
-		worker.setDaemon(true);
+	/*
+	 * Speaks the line, but treats a line that was stopped by sock() as having
+	 * been spoken successfully, since its process was killed on purpose.
+	 */
+	private int sayUnlessStopped(String line) throws IOException, InterruptedException {
+		int cancellationsBefore = cancellations;
+		try {
+			int exitVal = say(line);
+			return cancellationsBefore == cancellations ? exitVal : 0;
+		} catch (IOException e) {
+			if (cancellationsBefore != cancellations) {
+				return 0;
+			}
+			throw e;
+		}
+	}
 
-		worker.start();
+	/*
+	 * Speaks the line and blocks until it has been spoken, returning the exit
+	 * value of the process that spoke it. By default the line is synthesised
+	 * by a new text2wave process and played by this application, subclasses
+	 * may synthesise the line some other way.
+	 */
+	protected int say(String line) throws IOException, InterruptedException {
+		long requested = System.nanoTime();
+		byte[] wave = runForOutput(new ProcessBuilder("text2wave", "-eval", scriptFile), line);
+		play(wave, requested);
+		return 0;
 	}
 
+	/*
+	 * Plays WAV data through the shared wave player, blocking until it has
+	 * finished or sock() has been called.
+	 */
+	protected final void play(byte[] wave, long requested) throws IOException {
+		WavePlayer.getDefault().play(wave, this, requested);
+	}
+
+	/*
+	 * Starts a process, gives it the input and returns everything it printed.
+	 * The process is remembered while it runs so that sock() can stop it.
+	 * An IOException is thrown if the process failed.
+	 */
+	protected final byte[] runForOutput(ProcessBuilder processBuilder, String input)
+			throws IOException, InterruptedException {
+		Process process = processBuilder.redirectError(Redirect.INHERIT).start();
+		processes.add(process);
+		try {
+			try (Writer writer = new OutputStreamWriter(process.getOutputStream(),
+					StandardCharsets.UTF_8)) {
+				writer.write(input);
+			}
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (InputStream in = process.getInputStream()) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					output.write(buffer, 0, read);
+				}
+			}
+
+			int exitVal = process.waitFor();
+			if (exitVal != 0) {
+				throw new IOException(processBuilder.command().get(0)
+						+ " exited with " + exitVal);
+			}
+			return output.toByteArray();
+		} finally {
+			processes.remove(process);
+		}
+	}
+
+	protected String getScriptFile() {
+		return scriptFile;
+	}
+
+	/*
+	 * Stops this speaker straight away. Lines that have not started are
+	 * cancelled, the audio being played for this speaker is stopped, and any
+	 * line still being synthesised is stopped by killing only the processes
+	 * this speaker started, along with any processes they started.
+	 */
 	@Override
 	public void sock() {
-		try {
-			// Interrupt 'aplay' which festival uses to speak
-			ProcessBuilder pb =
-					new ProcessBuilder("bash", "-c", "killall aplay");
-			pb.start();
-		} catch (IOException e) {}
+		cancellations++;
+		SpeechScheduler.getDefault().cancel(this);
+		stopSpeaking();
+	}
+
+	// Stops this speaker's audio and kills every process it started
+	protected void stopSpeaking() {
+		WavePlayer.getDefault().stop(this);
+
+		List<Process> running;
+		synchronized (processes) {
+			running = new ArrayList<>(processes);
+		}
+		for (Process process : running) {
+			ProcessTree.destroy(process);
+		}
 	}
 
 	// template method pattern to notify children of finish
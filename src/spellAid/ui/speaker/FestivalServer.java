@@ -0,0 +1,158 @@
+package spellAid.ui.speaker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import spellAid.util.process.ProcessTree;
+
+/**
+ * This class wraps a single long-lived festival process that has already
+ * loaded a voice script. Lines are given to the process as commands over its
+ * standard input, so the voice is only loaded once instead of once per line.
+ * Festival saves each line as a WAV file, which is read back and played by
+ * this application.
+ *
+ * A marker is printed to standard error after every line so that this class
+ * knows when festival has finished. If the process dies, it is started again
+ * the next time a line is synthesised.
+ *
+ * @author Luke Tudor
+ */
+public class FestivalServer {
+
+	// Printed by festival after each line has been spoken
+	private static final String DONE_MARKER = "VOXSPELL_DONE";
+
+	private final String scriptFile;
+
+	private volatile Process process;
+
+	// Set when the line being spoken is stopped on purpose
+	private volatile boolean interrupted;
+
+	private BufferedWriter commands;
+
+	private BufferedReader replies;
+
+	// Festival saves each line here before it is read back
+	private Path waveFile;
+
+	public FestivalServer(String scriptFile) {
+		this.scriptFile = scriptFile;
+	}
+
+	/**
+	 * Makes sure the festival process is running, starting it if needed.
+	 * Festival loads the voice in the background, so this does not block.
+	 */
+	public synchronized void start() throws IOException {
+		if (process != null && process.isAlive()) {
+			return;
+		}
+		stop();
+
+		ProcessBuilder pb = new ProcessBuilder("festival", "--pipe", scriptFile);
+		process = pb.start();
+
+		commands = new BufferedWriter(new OutputStreamWriter(
+				process.getOutputStream(), StandardCharsets.UTF_8));
+		replies = new BufferedReader(new InputStreamReader(
+				process.getErrorStream(), StandardCharsets.UTF_8));
+
+		if (waveFile == null) {
+			waveFile = Files.createTempFile("festival", ".wav");
+			waveFile.toFile().deleteOnExit();
+		}
+	}
+
+	/**
+	 * Synthesises the line and returns it as WAV data, blocking until
+	 * festival has finished. If the process has died it is restarted once
+	 * before giving up.
+	 */
+	public synchronized byte[] synthesise(String line) throws IOException {
+		interrupted = false;
+		try {
+			return synthesiseOnce(line);
+		} catch (IOException e) {
+			if (interrupted) {
+				throw e;
+			}
+			stop();
+			return synthesiseOnce(line);
+		}
+	}
+
+	private byte[] synthesiseOnce(String line) throws IOException {
+		start();
+
+		commands.write(saveWaveCommand(line, waveFile.toString()) + "\n");
+		commands.write("(format stderr \"" + DONE_MARKER + "\\n\")\n");
+		commands.flush();
+
+		// Anything else festival prints, such as warnings, is skipped
+		String reply;
+		while ((reply = replies.readLine()) != null) {
+			if (reply.trim().equals(DONE_MARKER)) {
+				return Files.readAllBytes(waveFile);
+			}
+		}
+		throw new IOException("festival exited while synthesising");
+	}
+
+	/**
+	 * Stops the festival process. It will be restarted by the next call to
+	 * synthesise().
+	 */
+	public synchronized void stop() {
+		if (process != null) {
+			ProcessTree.destroy(process);
+			process = null;
+		}
+	}
+
+	/**
+	 * Stops the line being synthesised, if any, by killing this server's
+	 * process. Unlike stop(), this does not wait for synthesise() to return,
+	 * so it can be called while another thread is waiting for a line.
+	 */
+	public void interrupt() {
+		Process speaking = process;
+		if (speaking != null) {
+			interrupted = true;
+			ProcessTree.destroy(speaking);
+		}
+	}
+
+	public boolean isRunning() {
+		Process running = process;
+		return running != null && running.isAlive();
+	}
+
+	public String getScriptFile() {
+		return scriptFile;
+	}
+
+	/*
+	 * Builds the scheme command that synthesises the line and saves it as a
+	 * WAV file.
+	 */
+	static String saveWaveCommand(String line, String file) {
+		return "(utt.save.wave (utt.synth (Utterance Text " + quote(line)
+				+ ")) " + quote(file) + " 'riff)";
+	}
+
+	/*
+	 * Quotes and backslashes are escaped so that the text is always read as a
+	 * single scheme string.
+	 */
+	private static String quote(String text) {
+		return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
@@ -0,0 +1,112 @@
+package spellAid.ui.speaker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps a small pool of festival servers for each voice script.
+ * The pools live for as long as the application does, so changing between
+ * screens or voices does not start festival again.
+ *
+ * @author Luke Tudor
+ */
+public class FestivalServerPool {
+
+	// Number of festival processes kept for each voice
+	private static final int SERVERS_PER_VOICE = 2;
+
+	private static final Map<String, FestivalServerPool> POOLS = new HashMap<>();
+
+	static {
+		// Festival exits when its input closes, but stop it straight away anyway
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> stopAll()));
+	}
+
+	private final List<FestivalServer> servers;
+
+	private final BlockingQueue<FestivalServer> idleServers;
+
+	private final SpeechMetrics metrics;
+
+	private FestivalServerPool(String scriptFile, int size) {
+		servers = new ArrayList<>();
+		idleServers = new ArrayBlockingQueue<>(size);
+		metrics = new SpeechMetrics();
+		for (int i = 0; i < size; i++) {
+			FestivalServer server = new FestivalServer(scriptFile);
+			servers.add(server);
+			idleServers.add(server);
+		}
+	}
+
+	/**
+	 * Returns the pool for the voice script, creating it if needed.
+	 */
+	public static synchronized FestivalServerPool forScript(String scriptFile) {
+		FestivalServerPool pool = POOLS.get(scriptFile);
+		if (pool == null) {
+			pool = new FestivalServerPool(scriptFile, SERVERS_PER_VOICE);
+			POOLS.put(scriptFile, pool);
+		}
+		return pool;
+	}
+
+	public static synchronized void stopAll() {
+		for (FestivalServerPool pool : POOLS.values()) {
+			for (FestivalServer server : pool.servers) {
+				server.stop();
+			}
+		}
+	}
+
+	/**
+	 * Starts any idle servers that are not running so that the voice is
+	 * already loaded by the time the first line is spoken.
+	 */
+	public void warmUp() {
+		for (FestivalServer server : idleServers) {
+			try {
+				server.start();
+			} catch (IOException e) {}
+		}
+	}
+
+	/**
+	 * Synthesises the line on the next free server and returns it as WAV data.
+	 * The time spent waiting for a free server and the time spent synthesising
+	 * are recorded in this pool's metrics.
+	 */
+	public byte[] synthesise(String line) throws IOException, InterruptedException {
+		return synthesise(line, null);
+	}
+
+	/**
+	 * Like synthesise(String), but the server synthesising the line is given
+	 * to the listener first, so that the caller can interrupt it.
+	 */
+	public byte[] synthesise(String line, Consumer<FestivalServer> whenAcquired)
+			throws IOException, InterruptedException {
+		long queued = System.nanoTime();
+		FestivalServer server = idleServers.take();
+		long started = System.nanoTime();
+		try {
+			if (whenAcquired != null) {
+				whenAcquired.accept(server);
+			}
+			return server.synthesise(line);
+		} finally {
+			idleServers.add(server);
+			metrics.record(started - queued, System.nanoTime() - started);
+		}
+	}
+
+	public SpeechMetrics getMetrics() {
+		return metrics;
+	}
+}
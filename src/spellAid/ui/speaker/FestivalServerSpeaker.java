@@ -0,0 +1,71 @@
+package spellAid.ui.speaker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * This speaker gives lines to a pool of long-lived festival processes instead
+ * of starting a new festival process for every line. This avoids loading the
+ * voice again before each line is spoken. Lines that have already been
+ * rendered by the speech cache are played directly instead.
+ *
+ * Either way, the audio is played by this application's wave player.
+ *
+ * @author Luke Tudor
+ */
+public abstract class FestivalServerSpeaker extends ConcurrentAsynchronousSpeaker {
+
+	private FestivalServerPool pool;
+
+	// The server speaking this speaker's current line, if any
+	private volatile FestivalServer speakingServer;
+
+	public FestivalServerSpeaker(AsynchronousComponentEnabler list, String file) {
+		super(list, file);
+		pool = FestivalServerPool.forScript(file);
+		pool.warmUp();
+	}
+
+	@Override
+	protected int say(String line) throws IOException, InterruptedException {
+		long requested = System.nanoTime();
+		byte[] wave = null;
+
+		Path cached = SpeechCache.getDefault().getCached(getScriptFile(), line);
+		if (cached != null) {
+			try {
+				wave = Files.readAllBytes(cached);
+			} catch (IOException e) {
+				// The file was evicted, so the line is synthesised below instead
+			}
+		}
+		if (wave == null) {
+			try {
+				wave = pool.synthesise(line, server -> speakingServer = server);
+			} finally {
+				speakingServer = null;
+			}
+		}
+
+		play(wave, requested);
+		return 0;
+	}
+
+	@Override
+	protected void stopSpeaking() {
+		super.stopSpeaking();
+		FestivalServer server = speakingServer;
+		if (server != null) {
+			// The pool starts the server again for the next line
+			server.interrupt();
+		}
+	}
+
+	/**
+	 * Returns the wait and synthesis times of the lines spoken with this voice.
+	 */
+	public SpeechMetrics getMetrics() {
+		return pool.getMetrics();
+	}
+}
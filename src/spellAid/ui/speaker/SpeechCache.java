@@ -0,0 +1,278 @@
+package spellAid.ui.speaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * This class keeps a directory of lines that have already been synthesised
+ * with text2wave, so that they can be played straight away instead of being
+ * synthesised again every time they are spoken.
+ *
+ * Each file is named after a hash of the voice script, its contents and the
+ * text, so the same line spoken with a different or edited voice is stored
+ * separately. When the
+ * directory grows past its size limit, the least recently used files are
+ * deleted.
+ *
+ * Lines are rendered one at a time by a background thread. Lines can be
+ * queued with warm(), which is used to render a sublist ahead of time.
+ *
+ * @author Luke Tudor
+ */
+public class SpeechCache {
+
+	private static final Path CACHE_DIR = Paths.get("voices", ".cache");
+
+	// Roughly a thousand words of speech
+	private static final long MAX_CACHE_BYTES = 50L * 1024 * 1024;
+
+	private static final String SUFFIX = ".wav";
+
+	private static SpeechCache defaultCache;
+
+	// Voice script -> its contents, as last read
+	private static final Map<String, Script> SCRIPTS = new ConcurrentHashMap<>();
+
+	// File name -> file size, kept in least recently used first order
+	private final LinkedHashMap<String, Long> entries;
+
+	private long totalBytes;
+
+	private final LinkedBlockingDeque<Request> pending;
+
+	private SpeechCache() {
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+		pending = new LinkedBlockingDeque<>();
+		loadEntries();
+
+		Thread renderer = new Thread(() -> renderPending());
+		renderer.setDaemon(true);
+		renderer.start();
+	}
+
+	public static synchronized SpeechCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new SpeechCache();
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Returns the rendered file for the line, or null if it has not been
+	 * rendered yet.
+	 */
+	public synchronized Path getCached(String scriptFile, String text) {
+		String name = fileName(scriptFile, text);
+		if (entries.get(name) == null) {
+			return null;
+		}
+		Path file = CACHE_DIR.resolve(name);
+		// Touch the file so that the usage order survives a restart
+		file.toFile().setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Renders the line now if it is not already cached and returns the file.
+	 */
+	public Path render(String scriptFile, String text) throws IOException, InterruptedException {
+		Path cached = getCached(scriptFile, text);
+		if (cached != null) {
+			return cached;
+		}
+
+		String name = fileName(scriptFile, text);
+		Files.createDirectories(CACHE_DIR);
+		Path temp = Files.createTempFile(CACHE_DIR, "render", ".tmp");
+		try {
+			ProcessBuilder pb = new ProcessBuilder("text2wave", "-eval",
+					scriptFile, "-o", temp.toString());
+			Process process = pb.start();
+			try (Writer input = new OutputStreamWriter(process.getOutputStream(),
+					StandardCharsets.UTF_8)) {
+				input.write(text);
+			}
+			try {
+				if (process.waitFor() != 0) {
+					throw new IOException("text2wave failed for: " + text);
+				}
+			} catch (InterruptedException e) {
+				// The render was cancelled, so text2wave is no longer needed
+				process.destroy();
+				throw e;
+			}
+
+			Path file = CACHE_DIR.resolve(name);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			add(name, Files.size(file));
+			return file;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Queues the lines to be rendered in the background. Lines queued for any
+	 * other voice are dropped, so changing voice only renders the new voice.
+	 */
+	public void warm(String scriptFile, Collection<String> texts) {
+		dropOtherVoices(scriptFile);
+		for (String text : texts) {
+			pending.addLast(new Request(scriptFile, text));
+		}
+	}
+
+	/**
+	 * Like warm(), but the lines are rendered before anything already queued.
+	 * This is used for the words of a quiz that is about to start.
+	 */
+	public void warmFirst(String scriptFile, Collection<String> texts) {
+		dropOtherVoices(scriptFile);
+		String[] reversed = texts.toArray(new String[0]);
+		for (int i = reversed.length - 1; i >= 0; i--) {
+			pending.addFirst(new Request(scriptFile, reversed[i]));
+		}
+	}
+
+	private void dropOtherVoices(String scriptFile) {
+		Iterator<Request> it = pending.iterator();
+		while (it.hasNext()) {
+			if (!it.next().scriptFile.equals(scriptFile)) {
+				it.remove();
+			}
+		}
+	}
+
+	// Run by the background thread for the life of the application
+	private void renderPending() {
+		while (true) {
+			try {
+				Request request = pending.takeFirst();
+				render(request.scriptFile, request.text);
+			} catch (IOException e) {
+				// text2wave is missing or failed, the line is spoken live instead
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private synchronized void add(String name, long size) {
+		Long old = entries.put(name, size);
+		if (old != null) {
+			totalBytes -= old;
+		}
+		totalBytes += size;
+		evict();
+	}
+
+	// Deletes least recently used files until the cache is under its limit
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (totalBytes > MAX_CACHE_BYTES && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			try {
+				Files.deleteIfExists(CACHE_DIR.resolve(eldest.getKey()));
+			} catch (IOException e) {}
+			totalBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	// Reads the files left by earlier runs, oldest first
+	private synchronized void loadEntries() {
+		File[] files = CACHE_DIR.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			entries.put(file.getName(), file.length());
+			totalBytes += file.length();
+		}
+		evict();
+	}
+
+	/*
+	 * The name of a cached file is the SHA-1 of the voice script's path and
+	 * contents and the text, so the same line for the same voice is always
+	 * found in the same place, and editing a voice script renders its lines
+	 * again instead of playing them in the old voice.
+	 */
+	private static String fileName(String scriptFile, String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((scriptFile + "\n").getBytes(StandardCharsets.UTF_8));
+			digest.update(scriptContents(scriptFile));
+			byte[] hash = digest.digest(("\n" + text).getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.append(SUFFIX).toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * Returns the contents of the voice script, reading it again only when
+	 * its size or modification time has changed. A script that cannot be read
+	 * has no contents.
+	 */
+	private static byte[] scriptContents(String scriptFile) {
+		File file = new File(scriptFile);
+		String stamp = file.length() + "@" + file.lastModified();
+		Script script = SCRIPTS.get(scriptFile);
+		if (script == null || !script.stamp.equals(stamp)) {
+			byte[] contents;
+			try {
+				contents = Files.readAllBytes(file.toPath());
+			} catch (IOException e) {
+				contents = new byte[0];
+			}
+			script = new Script(stamp, contents);
+			SCRIPTS.put(scriptFile, script);
+		}
+		return script.contents;
+	}
+
+	private static class Script {
+		private final String stamp;
+		private final byte[] contents;
+
+		private Script(String stamp, byte[] contents) {
+			this.stamp = stamp;
+			this.contents = contents;
+		}
+	}
+
+	private static class Request {
+		private final String scriptFile;
+		private final String text;
+
+		private Request(String scriptFile, String text) {
+			this.scriptFile = scriptFile;
+			this.text = text;
+		}
+	}
+}
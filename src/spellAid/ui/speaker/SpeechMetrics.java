@@ -0,0 +1,75 @@
+package spellAid.ui.speaker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps simple timing statistics for spoken lines: how long each
+ * line waited in a queue before it started being spoken, and how long it took
+ * to speak. All times are recorded in nanoseconds.
+ *
+ * @author Luke Tudor
+ */
+public class SpeechMetrics {
+
+	private long count;
+
+	private long lastWait;
+	private long totalWait;
+	private long maxWait;
+
+	private long lastSpeak;
+	private long totalSpeak;
+	private long maxSpeak;
+
+	public synchronized void record(long waitNanos, long speakNanos) {
+		count++;
+
+		lastWait = waitNanos;
+		totalWait += waitNanos;
+		maxWait = Math.max(maxWait, waitNanos);
+
+		lastSpeak = speakNanos;
+		totalSpeak += speakNanos;
+		maxSpeak = Math.max(maxSpeak, speakNanos);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getLastWaitMillis() {
+		return toMillis(lastWait);
+	}
+
+	public synchronized long getAverageWaitMillis() {
+		return count == 0 ? 0 : toMillis(totalWait / count);
+	}
+
+	public synchronized long getMaxWaitMillis() {
+		return toMillis(maxWait);
+	}
+
+	public synchronized long getLastSpeakMillis() {
+		return toMillis(lastSpeak);
+	}
+
+	public synchronized long getAverageSpeakMillis() {
+		return count == 0 ? 0 : toMillis(totalSpeak / count);
+	}
+
+	public synchronized long getMaxSpeakMillis() {
+		return toMillis(maxSpeak);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return count + " lines, wait last/avg/max " + getLastWaitMillis() + "/"
+				+ getAverageWaitMillis() + "/" + getMaxWaitMillis()
+				+ " ms, speak last/avg/max " + getLastSpeakMillis() + "/"
+				+ getAverageSpeakMillis() + "/" + getMaxSpeakMillis() + " ms";
+	}
+
+	private static long toMillis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+}
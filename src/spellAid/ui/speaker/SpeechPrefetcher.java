@@ -0,0 +1,79 @@
+package spellAid.ui.speaker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class renders lines that are likely to be spoken soon, such as the
+ * prompts for the next word of a quiz, while the user is still answering.
+ * By the time one of the lines is needed it is usually in the speech cache,
+ * so it can be played straight away.
+ *
+ * A prefetcher renders lines for one voice only. Lines that are no longer
+ * needed, for example because the voice changed, can be cancelled.
+ *
+ * @author Luke Tudor
+ */
+public class SpeechPrefetcher {
+
+	// Shared by all prefetchers so that old quizzes cannot pile up threads
+	private static final ExecutorService RENDERERS = Executors.newFixedThreadPool(2, r -> {
+		Thread renderer = new Thread(r);
+		renderer.setDaemon(true);
+		return renderer;
+	});
+
+	private final String scriptFile;
+
+	private final List<Future<?>> pending;
+
+	public SpeechPrefetcher(String scriptFile) {
+		this.scriptFile = scriptFile;
+		pending = new ArrayList<>();
+	}
+
+	/**
+	 * Starts rendering the lines in the background. Lines that are already
+	 * cached are skipped.
+	 */
+	public synchronized void prefetch(Collection<String> lines) {
+		removeFinished();
+		SpeechCache cache = SpeechCache.getDefault();
+		for (String line : lines) {
+			if (cache.getCached(scriptFile, line) == null) {
+				pending.add(RENDERERS.submit(() -> {
+					cache.render(scriptFile, line);
+					return null;
+				}));
+			}
+		}
+	}
+
+	/**
+	 * Cancels every line that has not finished rendering yet.
+	 */
+	public synchronized void cancel() {
+		for (Future<?> render : pending) {
+			render.cancel(true);
+		}
+		pending.clear();
+	}
+
+	public String getScriptFile() {
+		return scriptFile;
+	}
+
+	private void removeFinished() {
+		Iterator<Future<?>> it = pending.iterator();
+		while (it.hasNext()) {
+			if (it.next().isDone()) {
+				it.remove();
+			}
+		}
+	}
+}
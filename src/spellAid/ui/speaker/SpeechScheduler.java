@@ -0,0 +1,143 @@
+package spellAid.ui.speaker;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.IntConsumer;
+
+/**
+ * This class speaks lines one at a time, in the order they were requested,
+ * on a single background thread shared by every speaker. This means two
+ * lines can never be spoken over the top of each other.
+ *
+ * A line that is already waiting to be spoken by the same speaker is not
+ * queued again, and whoever asked for it again is told when the waiting line
+ * has been spoken. Lines that are still waiting when their speaker is stopped
+ * are cancelled instead of being spoken.
+ *
+ * The time each line waited in the queue and the time it took to speak are
+ * recorded in this scheduler's metrics.
+ *
+ * @author Luke Tudor
+ */
+public class SpeechScheduler {
+
+	private static SpeechScheduler defaultScheduler;
+
+	private final LinkedBlockingDeque<Utterance> queue;
+
+	private final SpeechMetrics metrics;
+
+	private SpeechScheduler() {
+		queue = new LinkedBlockingDeque<>();
+		metrics = new SpeechMetrics();
+
+		Thread worker = new Thread(() -> speakQueued());
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	public static synchronized SpeechScheduler getDefault() {
+		if (defaultScheduler == null) {
+			defaultScheduler = new SpeechScheduler();
+		}
+		return defaultScheduler;
+	}
+
+	/**
+	 * Queues a line to be spoken. The speech task returns the exit value of
+	 * whatever spoke the line, which is then given to whenFinished. A line the
+	 * owner already has waiting is not queued again, and whenFinished is called
+	 * once the waiting line has been spoken. A cancelled line still calls
+	 * whenFinished, with an exit value of 0, so the caller always gets to tidy
+	 * up.
+	 */
+	public void schedule(Object owner, String line, Callable<Integer> speech,
+			IntConsumer whenFinished) {
+		synchronized (queue) {
+			for (Utterance waiting : queue) {
+				// A line just taken by the worker may still be seen here, and is skipped once spoken
+				if (waiting.owner == owner && waiting.line.equals(line) && !waiting.finished) {
+					// The same line is already going to be spoken
+					waiting.whenFinished = waiting.whenFinished.andThen(whenFinished);
+					return;
+				}
+			}
+			queue.addLast(new Utterance(owner, line, speech, whenFinished));
+		}
+	}
+
+	/**
+	 * Cancels every line the owner has queued that has not started yet.
+	 */
+	public void cancel(Object owner) {
+		synchronized (queue) {
+			Iterator<Utterance> it = queue.iterator();
+			while (it.hasNext()) {
+				Utterance waiting = it.next();
+				if (waiting.owner == owner) {
+					it.remove();
+					waiting.whenFinished.accept(0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of lines waiting to be spoken.
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public SpeechMetrics getMetrics() {
+		return metrics;
+	}
+
+	// Run by the worker thread for the life of the application
+	private void speakQueued() {
+		while (true) {
+			Utterance next;
+			try {
+				next = queue.takeFirst();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			long started = System.nanoTime();
+			int exitVal;
+			try {
+				exitVal = next.speech.call();
+			} catch (Exception e) {
+				exitVal = -1;
+			}
+			metrics.record(started - next.queued, System.nanoTime() - started);
+
+			// Callbacks are only added while holding the queue, so none are missed
+			IntConsumer whenFinished;
+			synchronized (queue) {
+				next.finished = true;
+				whenFinished = next.whenFinished;
+			}
+			whenFinished.accept(exitVal);
+		}
+	}
+
+	private static class Utterance {
+		private final Object owner;
+		private final String line;
+		private final Callable<Integer> speech;
+		private IntConsumer whenFinished;
+		private boolean finished;
+		private final long queued;
+
+		private Utterance(Object owner, String line, Callable<Integer> speech,
+				IntConsumer whenFinished) {
+			this.owner = owner;
+			this.line = line;
+			this.speech = speech;
+			this.whenFinished = whenFinished;
+			queued = System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package spellAid.ui.speaker;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * This class plays WAV data produced by festival inside the JVM, through a
+ * single audio line that is opened once and reused for every line spoken.
+ * Because the audio is played here rather than by festival, it can be
+ * stopped, paused or made quieter straight away.
+ *
+ * The time between a line being requested and its first sample being given
+ * to the audio line is recorded, along with how long it took to play.
+ *
+ * A speaker may be stopped after its line has been synthesised but before it
+ * has started playing. The time of each speaker's last stop is kept, and a
+ * line requested before it is not played at all.
+ *
+ * @author Luke Tudor
+ */
+public class WavePlayer {
+
+	// Size of each chunk written to the line, small so that stop() is quick
+	private static final int CHUNK_BYTES = 2048;
+
+	private static WavePlayer defaultPlayer;
+
+	private volatile SourceDataLine line;
+
+	private AudioFormat lineFormat;
+
+	// The speaker whose line is playing, so that other speakers cannot stop it
+	private volatile Object playing;
+
+	private volatile boolean stopped;
+
+	// Owner -> System.nanoTime() of the last stop(), also locked while a line is claimed
+	private final Map<Object, Long> stopTimes;
+
+	private volatile boolean paused;
+
+	private volatile double volume;
+
+	private final SpeechMetrics metrics;
+
+	private WavePlayer() {
+		volume = 1;
+		metrics = new SpeechMetrics();
+		stopTimes = new WeakHashMap<>();
+	}
+
+	public static synchronized WavePlayer getDefault() {
+		if (defaultPlayer == null) {
+			defaultPlayer = new WavePlayer();
+		}
+		return defaultPlayer;
+	}
+
+	/**
+	 * Plays the WAV data and blocks until it has finished playing or has been
+	 * stopped. The requested time is the System.nanoTime() at which the line
+	 * was asked for, used to measure the time to the first audio sample. If
+	 * the owner has been stopped since then, nothing is played.
+	 */
+	public synchronized void play(byte[] wave, Object owner, long requested) throws IOException {
+		synchronized (stopTimes) {
+			Long stoppedAt = stopTimes.get(owner);
+			if (stoppedAt != null && stoppedAt - requested >= 0) {
+				return;
+			}
+			playing = owner;
+			stopped = false;
+		}
+		try (AudioInputStream audio = AudioSystem.getAudioInputStream(
+				new ByteArrayInputStream(wave))) {
+
+			openLine(audio.getFormat());
+
+			byte[] buffer = new byte[CHUNK_BYTES - CHUNK_BYTES % lineFormat.getFrameSize()];
+			long firstSample = 0;
+			int read;
+			while (!stopped && (read = audio.read(buffer)) > 0) {
+				if (firstSample == 0) {
+					firstSample = System.nanoTime();
+				}
+				line.write(buffer, 0, read);
+			}
+			if (!stopped) {
+				line.drain();
+			}
+			if (firstSample != 0) {
+				metrics.record(firstSample - requested, System.nanoTime() - firstSample);
+			}
+		} catch (UnsupportedAudioFileException | LineUnavailableException e) {
+			throw new IOException(e);
+		} finally {
+			playing = null;
+			paused = false;
+		}
+	}
+
+	/**
+	 * Stops the audio straight away if it belongs to the owner. Anything not
+	 * yet played is thrown away, and any line the owner asked for before now
+	 * that has not started playing yet will not be played.
+	 */
+	public void stop(Object owner) {
+		synchronized (stopTimes) {
+			stopTimes.put(owner, System.nanoTime());
+			if (owner != playing) {
+				return;
+			}
+			stopped = true;
+		}
+		SourceDataLine current = line;
+		if (current != null) {
+			current.stop();
+			current.flush();
+			current.start();
+		}
+	}
+
+	/**
+	 * Pauses whatever is playing. It carries on from the same place when
+	 * resume() is called.
+	 */
+	public void pause() {
+		SourceDataLine current = line;
+		if (current != null && playing != null) {
+			paused = true;
+			current.stop();
+		}
+	}
+
+	public void resume() {
+		SourceDataLine current = line;
+		if (current != null && paused) {
+			paused = false;
+			current.start();
+		}
+	}
+
+	/**
+	 * Sets the volume, from 0 for silent to 1 for full volume.
+	 */
+	public void setVolume(double volume) {
+		this.volume = Math.max(0, Math.min(1, volume));
+		applyVolume();
+	}
+
+	public double getVolume() {
+		return volume;
+	}
+
+	/**
+	 * Returns the time to first sample and playing time of each line.
+	 */
+	public SpeechMetrics getMetrics() {
+		return metrics;
+	}
+
+	// Reuses the open line unless the new audio is in a different format
+	private void openLine(AudioFormat format) throws LineUnavailableException {
+		if (line != null && format.matches(lineFormat)) {
+			return;
+		}
+		if (line != null) {
+			line.close();
+		}
+		SourceDataLine newLine = AudioSystem.getSourceDataLine(format);
+		newLine.open(format);
+		newLine.start();
+		lineFormat = format;
+		line = newLine;
+		applyVolume();
+	}
+
+	// Converts the volume to decibels, which is what the line's control uses
+	private void applyVolume() {
+		SourceDataLine current = line;
+		if (current == null || !current.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+			return;
+		}
+		FloatControl gain = (FloatControl) current.getControl(FloatControl.Type.MASTER_GAIN);
+		float decibels = volume == 0 ? gain.getMinimum() : (float) (20 * Math.log10(volume));
+		gain.setValue(Math.max(gain.getMinimum(), Math.min(gain.getMaximum(), decibels)));
+	}
+}
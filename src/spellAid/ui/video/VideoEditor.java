@@ -11,13 +11,17 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import spellAid.ui.AppDim;
 import spellAid.ui.BackButton;
 import spellAid.util.string.URLString;
+import spellAid.util.video.VideoSettings;
 
 /**
- * This class is a combined video viewer and editor.
+ * This class is a combined video viewer and editor. Changes to the settings
+ * are previewed on a few stills straight away, and the video is only
+ * rendered when the user asks for it.
  * 
  * @author Luke Tudor
  */
@@ -40,6 +44,9 @@ public class VideoEditor extends Application {
 		
 		VideoPanel vp = new VideoPanel();
 		
+		// Shows what the settings will look like, without rendering the video
+		VideoPreview preview = new VideoPreview(VideoManipulator.SOURCE);
+		
 		VideoManipulator vm = new VideoManipulator() {
 			
 			@Override
@@ -48,8 +55,20 @@ public class VideoEditor extends Application {
 			}
 			
 			@Override
-			void doWhenFinished() {
-				vp.setVideo("videos/out.mp4");
+			void doWhenFinished(String video) {
+				vp.setVideo(video);
+				vp.start();
+			}
+			
+			@Override
+			void doWhenSettingsChanged(VideoSettings settings) {
+				preview.show(settings);
+			}
+			
+			// The video that was playing before the render is played again
+			@Override
+			void doWhenStopped() {
+				vp.setVideo(vp.getVideo());
 				vp.start();
 			}
 		};
@@ -81,7 +100,7 @@ public class VideoEditor extends Application {
 		BorderPane root = new BorderPane();
 		root.setTop(backPanel);
 		root.setCenter(vp);
-		root.setBottom(vm);
+		root.setBottom(new VBox(preview, vm));
 		root.setPrefSize(AppDim.WIDTH.getValue(), AppDim.HEIGHT.getValue());
 		root.getStylesheets().add(STYLESHEET);
 		
@@ -1,12 +1,10 @@
 package spellAid.ui.video;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -18,28 +16,46 @@ import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.Slider;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
-import javafx.util.Duration;
+import spellAid.util.video.FFmpegRender;
+import spellAid.util.video.ParallelRender;
+import spellAid.util.video.RenderBaseline;
+import spellAid.util.video.RenderCache;
+import spellAid.util.video.RenderJob;
+import spellAid.util.video.RenderProgress;
+import spellAid.util.video.RenderScheduler;
+import spellAid.util.video.VideoRender;
+import spellAid.util.video.VideoSettings;
 
 /**
  * This class is a GUI video editor that uses FFMPEG to manipulate a video
- * in some way specified by the user.
+ * in some way specified by the user. Rendering progress is reported by ffmpeg
+ * itself, see FFmpegRender, and a render can be cancelled part way through.
+ * Finished renders are kept in a RenderCache, so making a video with the
+ * same settings again plays it straight away. On a machine with several
+ * cores, the video can be rendered in parallel pieces, see ParallelRender,
+ * and the time taken is compared with the last render done by one process,
+ * which is remembered between sessions, see RenderBaseline.
+ * Renders are queued with the RenderScheduler, which every editor shares.
  * 
  * @author Luke Tudor
  */
 public class VideoManipulator extends VBox {
 
+	static final String SOURCE = "videos/big_buck_bunny_1_minute.mp4";
+
 	private Button submit;
 
-	private ProgressBar progressBar;
+	private Button cancel;
 
-	private ControlPanel cPanel;
+	private ProgressBar progressBar;
 
-	private double originalFileSize;
+	private Label metrics;
 
-	private File newFile;
+	private ControlPanel cPanel;
 
-	private boolean processFinished;
+	private RenderJob job;
 
 	public VideoManipulator() {
 		super();
@@ -47,75 +63,159 @@ public class VideoManipulator extends VBox {
 		submit = new Button("Make Video");
 		submit.setOnAction(e -> createVideo());
 
-		progressBar = new ProgressBar(0);
+		cancel = new Button("Cancel");
+		cancel.setOnAction(e -> job.cancel());
+		cancel.setDisable(true);
 
-		cPanel = new ControlPanel();
+		progressBar = new ProgressBar(0);
 
-		originalFileSize = FileSystems.getDefault().getPath("videos/big_buck_bunny_1_minute.mp4").toFile().length();
+		metrics = new Label();
 
-		newFile = FileSystems.getDefault().getPath("videos/out.mp4").toFile();
+		cPanel = new ControlPanel();
 
-		processFinished = true;
+		HBox buttons = new HBox(submit, cancel);
+		buttons.setSpacing(5);
+		buttons.setAlignment(Pos.CENTER);
 
 		getChildren().add(cPanel);
-		getChildren().add(submit);
+		getChildren().add(metrics);
+		getChildren().add(buttons);
 		setAlignment(Pos.CENTER);
 
 		setPadding(new Insets(5));
-
-		Timeline timer = new Timeline(new KeyFrame(Duration.millis(200), e -> updateProgress()));
-		timer.setCycleCount(Animation.INDEFINITE);
-		timer.play();
 	}
 
-	// Renders the video with a thread worker when prompted by the user
+	// Renders the video with a thread worker when prompted by the user, unless it was rendered before
 	private void createVideo() {
+		VideoSettings settings = cPanel.getSettings();
+		RenderCache cache = RenderCache.getDefault();
 
-		submit.setDisable(true);
+		Path cached = cache.getCached(SOURCE, settings);
+		if (cached != null) {
+			progressBar.setProgress(1);
+			metrics.setText("Done");
+			doWhenStarting();
+			doWhenFinished(cached.toString());
+			return;
+		}
 
-		processFinished = false;
-
-		Thread worker = new Thread(new Runnable() {
-
-			@Override
-			public void run() {
-				String options = cPanel.getSettings();
-				String cmd = "ffmpeg -y -i videos/big_buck_bunny_1_minute.mp4" 
-						+ options + " -strict -2 videos/out.mp4";
-				ProcessBuilder pb = new ProcessBuilder("bash", "-c", cmd);
-				try {
-					Process process = pb.start();
-					process.waitFor();
-				} catch (IOException | InterruptedException e) {}
-				Platform.runLater(() -> asynchronousFinish());
+		/*
+		 * If the cache directory cannot be made, the video is rendered to a
+		 * file of its own without being kept, so renders never share a file.
+		 */
+		Path output;
+		boolean cacheable = true;
+		try {
+			output = cache.fileFor(SOURCE, settings);
+		} catch (IOException e) {
+			try {
+				output = Files.createTempFile(Paths.get("videos"), "out", ".mp4");
+				output.toFile().deleteOnExit();
+				cacheable = false;
+			} catch (IOException noTempFile) {
+				metrics.setText("The video could not be made");
+				return;
 			}
+		}
 
-		});
+		boolean parallel = cPanel.isParallel();
+		VideoRender newRender = parallel
+				? new ParallelRender(SOURCE, settings.toOptions(), output.toString())
+				: new FFmpegRender(SOURCE, settings.toOptions(), output.toString());
 
-		worker.setDaemon(true);
+		RenderJob newJob = RenderScheduler.getDefault().submit(newRender,
+				progress -> Platform.runLater(() -> updateProgress(progress)));
+		if (newJob == null) {
+			metrics.setText("Too many videos are being made, please try again soon");
+			return;
+		}
+		job = newJob;
 
-		doWhenStarting();
+		submit.setDisable(true);
+		cancel.setDisable(false);
+
+		progressBar.setProgress(0);
+		metrics.setText(newJob.isStarted() ? "Starting..." : "Waiting for other videos to finish...");
+
+		String video = output.toString();
+		boolean keep = cacheable;
+		newJob.getResult().thenAccept(rendered -> {
+			if (rendered && keep) {
+				cache.add(newJob.getRender().getOutput());
+			}
+			// The time taken is described here, as it may read or save the baseline
+			String taken = rendered ? timeTaken(newJob) : null;
+			Platform.runLater(() -> asynchronousFinish(rendered, video, taken));
+		});
 
-		worker.start();
+		doWhenStarting();
 	}
 
-	private void asynchronousFinish() {
+	private void asynchronousFinish(boolean rendered, String video, String taken) {
 		submit.setDisable(false);
-		processFinished = true;
-		doWhenFinished();
+		cancel.setDisable(true);
+		if (rendered) {
+			progressBar.setProgress(1);
+			metrics.setText(taken);
+			doWhenFinished(video);
+		} else {
+			progressBar.setProgress(0);
+			metrics.setText(job.getRender().isCancelled() ? "Cancelled" : "The video could not be made");
+			doWhenStopped();
+		}
+	}
+
+	/*
+	 * Describes how long the render took. A parallel render is compared with
+	 * how long one process took for the same length of video last time, and
+	 * a render by one process becomes the new baseline. The job may be one
+	 * asked for by another editor, so the kind of render is taken from it
+	 * rather than from this editor's settings.
+	 */
+	private static String timeTaken(RenderJob finished) {
+		boolean parallel = finished.getRender() instanceof ParallelRender;
+		double seconds = finished.getSecondsTaken();
+		String text = String.format("Done in %.1f s", seconds);
+		double videoSeconds = finished.getRender().getLastProgress().getDurationMicros() / 1e6;
+		if (videoSeconds <= 0) {
+			return text;
+		}
+		if (!parallel) {
+			RenderBaseline.record(seconds, videoSeconds);
+		} else if (RenderBaseline.get() > 0) {
+			double speedup = RenderBaseline.get() * videoSeconds / seconds;
+			text += String.format(", %.1fx as fast as one process", speedup);
+		} else {
+			text += ", no single-process baseline yet";
+		}
+		return text;
 	}
 
 	void doWhenStarting() {}
 
-	void doWhenFinished() {}
+	// Called with the path of the video made
+	void doWhenFinished(String video) {}
 
-	// Uses file size heuristic to determine progress
-	private void updateProgress() {
-		if (processFinished) {
-			progressBar.setProgress(1);
-		} else {
-			progressBar.setProgress(newFile.length()/originalFileSize);
+	// Called instead of doWhenFinished() when the render was cancelled or failed
+	void doWhenStopped() {}
+
+	// Called whenever the user changes a setting, before any video is made
+	void doWhenSettingsChanged(VideoSettings settings) {}
+
+	// Shows the progress reported by ffmpeg, with how fast it is going and how long is left
+	private void updateProgress(RenderProgress progress) {
+		if (progress.isFinished()) {
+			return;
 		}
+		double fraction = progress.getFraction();
+		progressBar.setProgress(fraction < 0 ? ProgressBar.INDETERMINATE_PROGRESS : fraction);
+
+		String text = String.format("%.0f fps, %.1fx", progress.getFps(), progress.getSpeed());
+		double secondsLeft = progress.getSecondsLeft();
+		if (secondsLeft >= 0) {
+			text += String.format(", %.0f s left", Math.ceil(secondsLeft));
+		}
+		metrics.setText(text);
 	}
 
 	/**
@@ -129,14 +229,19 @@ public class VideoManipulator extends VBox {
 		
 		private RadioButton negate;
 
+		private RadioButton parallel;
+
 		private Slider fps;
 
 		private Slider[] sliders;
 
 		private ControlPanel() {
 			Label[] labels = new Label[]{new Label("Rendering Progress:"), new Label("Invert Colour:"),
-					new Label("Change Framerate:")};
+					new Label("Change Framerate:"), new Label("Use All Cores:")};
 			negate = new RadioButton();
+			parallel = new RadioButton();
+			parallel.setSelected(ParallelRender.isUseful());
+			parallel.setDisable(!ParallelRender.isUseful());
 			fps = new Slider(1, 24, 24);
 			//fps.setShowTickLabels(true);
 
@@ -165,11 +270,14 @@ public class VideoManipulator extends VBox {
 			for (int i = 0; i < sliders.length; i++) {
 				root.add(sliders[i], 3, i);
 				//sliders[i].setShowTickLabels(true);
+				sliders[i].valueProperty().addListener((o, old, value) -> doWhenSettingsChanged(getSettings()));
 			}
+			negate.selectedProperty().addListener((o, old, value) -> doWhenSettingsChanged(getSettings()));
 
 			root.add(progressBar, 1, 0);
 			root.add(negate, 1, 1);
 			root.add(fps, 1, 2);
+			root.add(parallel, 1, 3);
 			
 			for (Node n : root.getChildren()) {
 				((Control) n).setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
@@ -179,20 +287,18 @@ public class VideoManipulator extends VBox {
 			setAlignment(Pos.CENTER);
 		}
 
+		// Whether the video should be rendered in parallel pieces
+		private boolean isParallel() {
+			return parallel.isSelected();
+		}
+
 		/*
 		 * Used by the video manipulator class to get the user specified settings from the 
 		 * GUI components.
 		 */
-		private String getSettings() {
-			StringBuilder sb = new StringBuilder();
-			sb.append(" -vf eq=contrast=" + sliders[0].getValue() 
-					+ ":brightness=" + sliders[1].getValue() 
-					+ ":saturation=" + sliders[2].getValue());
-			if (negate.isSelected()) {
-				sb.append(",negate");
-			}
-			sb.append(" -r " + fps.getValue());
-			return sb.toString();
+		private VideoSettings getSettings() {
+			return new VideoSettings(sliders[0].getValue(), sliders[1].getValue(),
+					sliders[2].getValue(), negate.isSelected(), fps.getValue());
 		}
 	}
 }
@@ -25,6 +25,8 @@ public class VideoPanel extends BorderPane {
 
 	private MediaPlayer player;
 
+	private String videoPath;
+
 	private final ButtonPanel btnPanel;
 
 	public VideoPanel () {
@@ -68,6 +70,8 @@ public class VideoPanel extends BorderPane {
 		
 		btnPanel.reset();
 		
+		this.videoPath = videoPath;
+		
 		BorderPane contentPanel = new BorderPane();
 		contentPanel.setPrefSize(600, 400);
 
@@ -84,6 +88,11 @@ public class VideoPanel extends BorderPane {
 		setCenter(contentPanel);
 	}
 
+	// The path of the video being displayed
+	public String getVideo() {
+		return videoPath;
+	}
+
 	/**
 	 * Class used to control the video player with buttons to perform various functions.
 	 * 
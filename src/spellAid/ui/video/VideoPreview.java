@@ -0,0 +1,179 @@
+package spellAid.ui.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.HBox;
+import spellAid.util.video.FrameFilter;
+import spellAid.util.video.VideoSettings;
+
+/**
+ * This class shows a few small stills from the reward video, changed to look
+ * the way the current settings would make the video look. The stills are
+ * changed in memory each time a setting changes, see FrameFilter, so the
+ * user can try settings out without waiting for the whole video to render.
+ * The frame rate cannot be previewed with stills.
+ *
+ * The stills are keyframes of the video, which ffmpeg can extract without
+ * decoding the frames between them, scaled down as they are extracted. They
+ * are extracted once, in the background, and kept in the video cache
+ * directory for next time. If they cannot be extracted, a message saying so
+ * is shown instead, and the settings can still be used without a preview.
+ *
+ * @author Luke Tudor
+ */
+public class VideoPreview extends HBox {
+
+	private static final int FRAMES = 5;
+
+	private static final int FRAME_WIDTH = 160;
+
+	// Keyframes at least this many seconds apart are used, so the stills show different scenes
+	private static final int SECONDS_APART = 10;
+
+	private static final Path CACHE_DIR = Paths.get("videos", ".cache");
+
+	// The unchanged pixels of each still, and the images shown
+	private final List<int[]> originals;
+
+	private final List<WritableImage> images;
+
+	private VideoSettings settings;
+
+	public VideoPreview(String source) {
+		super();
+
+		originals = new ArrayList<>();
+		images = new ArrayList<>();
+
+		setSpacing(5);
+		setPadding(new Insets(5));
+		setAlignment(Pos.CENTER);
+
+		Thread extractor = new Thread(() -> {
+			File[] stills = extractKeyframes(source);
+			Platform.runLater(() -> showStills(stills));
+		}, "preview extractor");
+		extractor.setDaemon(true);
+		extractor.start();
+	}
+
+	/**
+	 * Changes the stills to show the settings.
+	 */
+	public void show(VideoSettings settings) {
+		this.settings = settings;
+		for (int i = 0; i < images.size(); i++) {
+			WritableImage image = images.get(i);
+			int width = (int) image.getWidth();
+			int height = (int) image.getHeight();
+			int[] pixels = new int[width * height];
+			FrameFilter.apply(settings, originals.get(i), pixels, width, height);
+			image.getPixelWriter().setPixels(0, 0, width, height,
+					PixelFormat.getIntArgbInstance(), pixels, 0, width);
+		}
+	}
+
+	private void showStills(File[] stills) {
+		if (stills.length == 0) {
+			getChildren().add(new Label("The preview could not be made."));
+			return;
+		}
+		for (File still : stills) {
+			Image image = new Image(still.toURI().toString());
+			if (image.isError()) {
+				continue;
+			}
+			int width = (int) image.getWidth();
+			int height = (int) image.getHeight();
+			int[] pixels = new int[width * height];
+			image.getPixelReader().getPixels(0, 0, width, height,
+					PixelFormat.getIntArgbInstance(), pixels, 0, width);
+			originals.add(pixels);
+
+			WritableImage shown = new WritableImage(width, height);
+			images.add(shown);
+			getChildren().add(new ImageView(shown));
+		}
+		show(settings == null ? new VideoSettings(1, 0, 1, false, 24) : settings);
+	}
+
+	/*
+	 * Returns the stills of the source, extracting them first if this version
+	 * of the source has not been extracted before, or no stills if they could
+	 * not be extracted. They are extracted into a directory of their own,
+	 * which is only given its final name once ffmpeg has finished, so
+	 * half-extracted stills are never used, and is deleted if ffmpeg fails.
+	 */
+	private static File[] extractKeyframes(String source) {
+		Path dir = CACHE_DIR.resolve("preview-" + new File(source).lastModified());
+		if (!Files.isDirectory(dir)) {
+			Path partial = CACHE_DIR.resolve(dir.getFileName() + ".partial");
+			boolean extracted = false;
+			try {
+				deleteAll(partial);
+				Files.createDirectories(partial);
+				Process process = new ProcessBuilder("ffmpeg", "-y", "-skip_frame", "nokey", "-i", source,
+						"-vf", "select='isnan(prev_selected_t)+gte(t-prev_selected_t\\," + SECONDS_APART
+								+ ")',scale=" + FRAME_WIDTH + ":-2",
+						"-vsync", "vfr", "-frames:v", Integer.toString(FRAMES),
+						partial.resolve("still%d.png").toString())
+						.redirectErrorStream(true)
+						.redirectOutput(new File("/dev/null"))
+						.start();
+				int exitCode = process.waitFor();
+				if (exitCode == 0) {
+					Files.move(partial, dir);
+					extracted = true;
+				} else {
+					System.err.println("Could not extract the preview of " + source
+							+ ": ffmpeg exited with " + exitCode);
+				}
+			} catch (IOException e) {
+				System.err.println("Could not extract the preview of " + source + ": " + e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (!extracted) {
+					deleteAll(partial);
+				}
+			}
+		}
+
+		File[] stills = dir.toFile().listFiles((file, name) -> name.endsWith(".png"));
+		if (stills == null) {
+			return new File[0];
+		}
+		Arrays.sort(stills);
+		return stills;
+	}
+
+	private static void deleteAll(Path partial) {
+		if (!Files.isDirectory(partial)) {
+			return;
+		}
+		try {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(partial)) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			}
+			Files.deleteIfExists(partial);
+		} catch (IOException e) {}
+	}
+}
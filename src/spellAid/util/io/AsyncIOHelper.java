@@ -0,0 +1,74 @@
+package spellAid.util.io;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * This class runs persistence tasks on a single background writer thread,
+ * so that a slow disk never freezes the GUI. Each method returns straight
+ * away with a CompletableFuture that completes when the task has been done.
+ *
+ * Because there is only one writer thread, tasks happen in the order they
+ * were asked for. A read of a file always sees every write to that file that
+ * was asked for before it.
+ *
+ * Writes are gathered by the classes that make them rather than here: for
+ * example QuizResultRecorder hands a quiz's answers over in one task, which
+ * writes them with one write per file.
+ *
+ * @author Luke Tudor
+ */
+public class AsyncIOHelper {
+
+	// How long quitting waits for outstanding writes
+	private static final long SHUTDOWN_SECONDS = 30;
+
+	private static AsyncIOHelper defaultHelper;
+
+	private final ExecutorService writer;
+
+	private AsyncIOHelper() {
+		writer = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "persistence writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public static synchronized AsyncIOHelper getDefault() {
+		if (defaultHelper == null) {
+			defaultHelper = new AsyncIOHelper();
+		}
+		return defaultHelper;
+	}
+
+	/**
+	 * Runs a persistence task on the writer thread, in order with every other
+	 * task.
+	 */
+	public CompletableFuture<Void> execute(Runnable task) {
+		return CompletableFuture.runAsync(task, writer);
+	}
+
+	/**
+	 * Like execute(), but the task returns a result.
+	 */
+	public <T> CompletableFuture<T> supply(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(task, writer);
+	}
+
+	/**
+	 * Finishes every task that has been asked for, then stops the writer
+	 * thread. This is called when the application quits, so that no answer
+	 * or score is lost.
+	 */
+	public void shutdown() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {}
+	}
+}
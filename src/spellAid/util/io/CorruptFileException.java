@@ -0,0 +1,26 @@
+package spellAid.util.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Thrown when a file does not match the checksum saved with it, or cannot
+ * be read at all, so that it is not mistaken for an empty file.
+ * 
+ * @author Luke Tudor
+ */
+public class CorruptFileException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Path file;
+
+	public CorruptFileException(Path file, Throwable cause) {
+		super(file + " is damaged", cause);
+		this.file = file;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+}
@@ -0,0 +1,509 @@
+package spellAid.util.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import spellAid.util.io.HighScores.Score;
+import spellAid.util.io.SublistStatistics.Result;
+
+/**
+ * Keeps the answers and high scores of every list in one embedded SQLite
+ * database file, "user_lists/.statistics.db", through JDBC. It is used when
+ * the application is run with -Dvoxspell.stats=database and the SQLite JDBC
+ * driver is on the class path, see StatsRepository and the README, which
+ * says where Runner.sh looks for the driver.
+ *
+ * The database has a table each for lists, words, attempts and scores. Every
+ * answer is one row of attempts, with the time it was given and the day, so
+ * nothing about an answer is lost. The attempts are indexed by word and
+ * result, so counting a sublist's answers per word is a lookup of each of
+ * its words, and by word and day, so counting them per day does not scan
+ * every answer either. Lists and words are given their ids by the database
+ * the first time they are seen.
+ *
+ * A sublist's counts are read in one query when it is first used and kept in
+ * memory from then on. A group of answers is added in one transaction, and
+ * is only counted in memory once the transaction has been committed.
+ * Transactions are started with BEGIN IMMEDIATE, so other copies of the
+ * application using the same database wait for each other's changes rather
+ * than failing part way, for up to BUSY_TIMEOUT_MILLIS.
+ *
+ * The answers of a sublist the database has not seen yet are read from the
+ * text files of older versions, which are left in place. Its high scores
+ * are read from its scores file until a time is added to the database.
+ *
+ * Every method should be called on the persistence writer thread.
+ *
+ * @author Luke Tudor
+ */
+public class DatabaseStatsRepository implements StatsRepository {
+
+	private static final Path DATABASE_FILE = FileSystems.getDefault().getPath("user_lists", ".statistics.db");
+
+	private static final String URL_PREFIX = "jdbc:sqlite:";
+
+	// How long a change waits for another copy of the application to finish its own
+	private static final int BUSY_TIMEOUT_MILLIS = 5000;
+
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS lists (list_id INTEGER PRIMARY KEY, list_file TEXT NOT NULL,"
+					+ " sublist TEXT NOT NULL, UNIQUE (list_file, sublist))",
+			"CREATE TABLE IF NOT EXISTS words (word_id INTEGER PRIMARY KEY,"
+					+ " list_id INTEGER NOT NULL REFERENCES lists, word TEXT NOT NULL, UNIQUE (list_id, word))",
+			"CREATE TABLE IF NOT EXISTS attempts (word_id INTEGER NOT NULL REFERENCES words,"
+					+ " result INTEGER NOT NULL, answered INTEGER NOT NULL, answered_day INTEGER NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS attempts_by_word ON attempts (word_id, result, answered)",
+			"CREATE INDEX IF NOT EXISTS attempts_by_day ON attempts (word_id, answered_day, result)",
+			"CREATE TABLE IF NOT EXISTS scores (list_id INTEGER NOT NULL REFERENCES lists,"
+					+ " user_name TEXT NOT NULL, nanos INTEGER NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS scores_by_list ON scores (list_id, user_name)"
+	};
+
+	private final Map<String, DatabaseStatistics> loaded = new HashMap<>();
+
+	// Hidden file prefix of each sublist -> its id in the lists table
+	private final Map<String, Long> listIds = new HashMap<>();
+
+	private final Path databaseFile;
+
+	private Connection connection;
+
+	public DatabaseStatsRepository() {
+		this(DATABASE_FILE);
+	}
+
+	/**
+	 * Keeps the statistics in the given database file instead of the one in
+	 * user_lists, for example to check the repository without touching it.
+	 */
+	public DatabaseStatsRepository(Path databaseFile) {
+		this.databaseFile = databaseFile;
+	}
+
+	/**
+	 * Returns true if a JDBC driver for the database is on the class path.
+	 */
+	public static boolean isAvailable() {
+		try {
+			DriverManager.getDriver(URL_PREFIX + DATABASE_FILE);
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * A task run inside a transaction.
+	 */
+	private interface Transaction<T> {
+		T run(Connection connection) throws SQLException, IOException;
+	}
+
+	@Override
+	public synchronized SublistStatistics forSublist(String list, String sublist) {
+		String hiddenFile = StatsRepository.hiddenFileFor(list, sublist);
+		DatabaseStatistics statistics = loaded.get(hiddenFile);
+		if (statistics == null) {
+			statistics = new DatabaseStatistics(list, sublist);
+			loaded.put(hiddenFile, statistics);
+		}
+		return statistics;
+	}
+
+	@Override
+	public HighScores getHighScores(String list, String sublist) {
+		return HighScores.forStorage("database:" + databaseFile + ":" + StatsRepository.hiddenFileFor(list, sublist),
+				new DatabaseScores(list, sublist));
+	}
+
+	@Override
+	public synchronized void evict(String hiddenFile) {
+		loaded.remove(hiddenFile);
+	}
+
+	@Override
+	public synchronized void evictAll() {
+		loaded.clear();
+	}
+
+	// Every answer is written as it is recorded, so there is only the database to close
+	@Override
+	public synchronized void closeAll() {
+		evictAll();
+		listIds.clear();
+		if (connection != null) {
+			try {
+				connection.close();
+			} catch (SQLException e) {}
+			connection = null;
+		}
+	}
+
+	// The database is closed before its file is deleted, and is made again when next used
+	@Override
+	public void deleteAll() {
+		closeAll();
+		HighScores.evictAll();
+		new IOHelper().deleteIfExists(databaseFile);
+		StatsRepository.deleteStatisticsFiles();
+	}
+
+	private Connection connection() throws SQLException {
+		if (connection == null) {
+			Connection opened = DriverManager.getConnection(URL_PREFIX + databaseFile);
+			try (Statement statement = opened.createStatement()) {
+				statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+				for (String table : SCHEMA) {
+					statement.execute(table);
+				}
+			} catch (SQLException e) {
+				opened.close();
+				throw e;
+			}
+			connection = opened;
+		}
+		return connection;
+	}
+
+	/*
+	 * Runs the task in a transaction, which is committed if the task finishes
+	 * and rolled back if it throws.
+	 */
+	private synchronized <T> T inTransaction(Transaction<T> task) throws SQLException, IOException {
+		Connection database = connection();
+		try (Statement statement = database.createStatement()) {
+			statement.execute("BEGIN IMMEDIATE");
+		}
+		boolean committed = false;
+		try {
+			T result = task.run(database);
+			try (Statement statement = database.createStatement()) {
+				statement.execute("COMMIT");
+			}
+			committed = true;
+			StatisticsWatcher.getDefault().noteWrite(databaseFile);
+			return result;
+		} finally {
+			if (!committed) {
+				try (Statement statement = database.createStatement()) {
+					statement.execute("ROLLBACK");
+				} catch (SQLException e) {}
+			}
+		}
+	}
+
+	/*
+	 * Returns the id of the sublist, adding it to the lists table if it is
+	 * not there yet along with the answers in its old text files.
+	 */
+	private synchronized long listId(String list, String sublist) throws SQLException, IOException {
+		String hiddenFile = StatsRepository.hiddenFileFor(list, sublist);
+		Long id = listIds.get(hiddenFile);
+		if (id == null) {
+			id = inTransaction(database -> {
+				boolean added;
+				try (PreparedStatement insert = database.prepareStatement(
+						"INSERT OR IGNORE INTO lists (list_file, sublist) VALUES (?, ?)")) {
+					insert.setString(1, list);
+					insert.setString(2, sublist);
+					added = insert.executeUpdate() == 1;
+				}
+				long listId;
+				try (PreparedStatement select = database.prepareStatement(
+						"SELECT list_id FROM lists WHERE list_file = ? AND sublist = ?")) {
+					select.setString(1, list);
+					select.setString(2, sublist);
+					try (ResultSet row = select.executeQuery()) {
+						row.next();
+						listId = row.getLong(1);
+					}
+				}
+				if (added) {
+					importTextFiles(database, listId, hiddenFile);
+				}
+				return listId;
+			});
+			listIds.put(hiddenFile, id);
+		}
+		return id;
+	}
+
+	// Returns the id of the word in the list, adding it to the words table if needed
+	private static long wordId(Connection database, long listId, String word) throws SQLException {
+		try (PreparedStatement insert = database.prepareStatement(
+				"INSERT OR IGNORE INTO words (list_id, word) VALUES (?, ?)")) {
+			insert.setLong(1, listId);
+			insert.setString(2, word);
+			insert.executeUpdate();
+		}
+		try (PreparedStatement select = database.prepareStatement(
+				"SELECT word_id FROM words WHERE list_id = ? AND word = ?")) {
+			select.setLong(1, listId);
+			select.setString(2, word);
+			try (ResultSet row = select.executeQuery()) {
+				row.next();
+				return row.getLong(1);
+			}
+		}
+	}
+
+	/*
+	 * Adds an attempt for every line of the sublist's old text files. Their
+	 * times were never kept, so the attempts are given the time 0, which is
+	 * not counted on any day.
+	 */
+	private static void importTextFiles(Connection database, long listId, String hiddenFile)
+			throws SQLException {
+		Map<String, Long> wordIds = new HashMap<>();
+		try (PreparedStatement insert = database.prepareStatement(
+				"INSERT INTO attempts (word_id, result, answered, answered_day) VALUES (?, ?, 0, 0)")) {
+			for (Result result : Result.values()) {
+				Path textFile = FileSystems.getDefault().getPath(
+						hiddenFile + "." + result.name().toLowerCase() + ".txt");
+				try (BufferedReader reader = Files.newBufferedReader(textFile, StandardCharsets.UTF_8)) {
+					String word;
+					while ((word = reader.readLine()) != null) {
+						Long wordId = wordIds.get(word);
+						if (wordId == null) {
+							wordId = wordId(database, listId, word);
+							wordIds.put(word, wordId);
+						}
+						insert.setLong(1, wordId);
+						insert.setInt(2, result.ordinal());
+						insert.addBatch();
+					}
+				} catch (IOException e) {}
+			}
+			insert.executeBatch();
+		}
+	}
+
+	private static long dayOf(long time) {
+		return Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay();
+	}
+
+	private class DatabaseStatistics implements SublistStatistics {
+
+		private final String list;
+
+		private final String sublist;
+
+		// word -> number of times mastered, faulted and failed
+		private final Map<String, int[]> counts;
+
+		private final Map<String, Long> lastAnswered;
+
+		private final Map<String, Long> wordIds;
+
+		private DatabaseStatistics(String list, String sublist) {
+			this.list = list;
+			this.sublist = sublist;
+			counts = new HashMap<>();
+			lastAnswered = new HashMap<>();
+			wordIds = new HashMap<>();
+
+			try {
+				long listId = listId(list, sublist);
+				try (PreparedStatement select = connection().prepareStatement(
+						"SELECT w.word_id, w.word, a.result, COUNT(*), MAX(a.answered)"
+								+ " FROM words w JOIN attempts a ON a.word_id = w.word_id"
+								+ " WHERE w.list_id = ? GROUP BY w.word_id, w.word, a.result")) {
+					select.setLong(1, listId);
+					try (ResultSet rows = select.executeQuery()) {
+						while (rows.next()) {
+							String word = rows.getString(2);
+							wordIds.put(word, rows.getLong(1));
+							counts.computeIfAbsent(word, w -> new int[3])[rows.getInt(3)] = rows.getInt(4);
+							lastAnswered.merge(word, rows.getLong(5), Math::max);
+						}
+					}
+				}
+			} catch (SQLException | IOException e) {}
+		}
+
+		@Override
+		public void recordAll(List<Answer> answers) {
+			synchronized (DatabaseStatsRepository.this) {
+				// Words added to the words table, kept only once the answers are committed
+				Map<String, Long> newWordIds = new HashMap<>();
+				try {
+					long listId = listId(list, sublist);
+					inTransaction(database -> {
+						try (PreparedStatement insert = database.prepareStatement(
+								"INSERT INTO attempts (word_id, result, answered, answered_day) VALUES (?, ?, ?, ?)")) {
+							for (Answer answer : answers) {
+								Long wordId = wordIds.get(answer.getWord());
+								if (wordId == null) {
+									wordId = newWordIds.get(answer.getWord());
+								}
+								if (wordId == null) {
+									wordId = wordId(database, listId, answer.getWord());
+									newWordIds.put(answer.getWord(), wordId);
+								}
+								insert.setLong(1, wordId);
+								insert.setInt(2, answer.getResult().ordinal());
+								insert.setLong(3, answer.getTime());
+								insert.setLong(4, dayOf(answer.getTime()));
+								insert.addBatch();
+							}
+							insert.executeBatch();
+						}
+						return null;
+					});
+				} catch (SQLException | IOException e) {
+					// The answers were rolled back, so the counts stay as they are in the database
+					return;
+				}
+
+				wordIds.putAll(newWordIds);
+				for (Answer answer : answers) {
+					counts.computeIfAbsent(answer.getWord(), w -> new int[3])[answer.getResult().ordinal()]++;
+					lastAnswered.merge(answer.getWord(), answer.getTime(), Math::max);
+				}
+			}
+		}
+
+		@Override
+		public int getCount(String word, Result result) {
+			synchronized (DatabaseStatsRepository.this) {
+				int[] wordCounts = counts.get(word);
+				return wordCounts == null ? 0 : wordCounts[result.ordinal()];
+			}
+		}
+
+		@Override
+		public long getLastAnswered(String word) {
+			synchronized (DatabaseStatsRepository.this) {
+				Long time = lastAnswered.get(word);
+				return time == null ? 0 : time;
+			}
+		}
+
+		// Counted by the database, as the answers of every day are not kept in memory
+		@Override
+		public SortedMap<LocalDate, int[]> getDailyCounts(LocalDate since) {
+			SortedMap<LocalDate, int[]> days = new TreeMap<>();
+			synchronized (DatabaseStatsRepository.this) {
+				try {
+					long listId = listId(list, sublist);
+					try (PreparedStatement select = connection().prepareStatement(
+							"SELECT a.answered_day, a.result, COUNT(*)"
+									+ " FROM words w JOIN attempts a ON a.word_id = w.word_id"
+									+ " WHERE w.list_id = ? AND a.answered_day >= ?"
+									+ " GROUP BY a.answered_day, a.result")) {
+						select.setLong(1, listId);
+						select.setLong(2, Math.max(1, since.toEpochDay()));
+						try (ResultSet rows = select.executeQuery()) {
+							while (rows.next()) {
+								days.computeIfAbsent(LocalDate.ofEpochDay(rows.getLong(1)),
+										d -> new int[3])[rows.getInt(2)] = rows.getInt(3);
+							}
+						}
+					}
+				} catch (SQLException | IOException e) {}
+			}
+			return days;
+		}
+	}
+
+	/*
+	 * Keeps the times of one sublist in the scores table. Until a time has
+	 * been added for the sublist, its old scores file is read instead, and
+	 * the first save copies its times into the table.
+	 */
+	private class DatabaseScores implements HighScores.Storage {
+
+		private final String list;
+
+		private final String sublist;
+
+		private DatabaseScores(String list, String sublist) {
+			this.list = list;
+			this.sublist = sublist;
+		}
+
+		@Override
+		public List<Score> read() throws IOException {
+			List<Score> scores = new ArrayList<>();
+			synchronized (DatabaseStatsRepository.this) {
+				try {
+					long listId = listId(list, sublist);
+					try (PreparedStatement select = connection().prepareStatement(
+							"SELECT user_name, nanos FROM scores WHERE list_id = ?")) {
+						select.setLong(1, listId);
+						try (ResultSet rows = select.executeQuery()) {
+							while (rows.next()) {
+								scores.add(new Score(rows.getString(1), rows.getLong(2)));
+							}
+						}
+					}
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+			}
+			if (scores.isEmpty()) {
+				return HighScores.fileStorage(StatsRepository.scoreFileFor(list, sublist)).read();
+			}
+			return scores;
+		}
+
+		// Called by HighScores inside locked(), so the times are replaced in one transaction
+		@Override
+		public void write(List<Score> scores) throws IOException {
+			synchronized (DatabaseStatsRepository.this) {
+				try {
+					long listId = listId(list, sublist);
+					try (PreparedStatement delete = connection().prepareStatement(
+							"DELETE FROM scores WHERE list_id = ?")) {
+						delete.setLong(1, listId);
+						delete.executeUpdate();
+					}
+					try (PreparedStatement insert = connection().prepareStatement(
+							"INSERT INTO scores (list_id, user_name, nanos) VALUES (?, ?, ?)")) {
+						for (Score score : scores) {
+							insert.setLong(1, listId);
+							insert.setString(2, score.getUser());
+							insert.setLong(3, score.getNanos());
+							insert.addBatch();
+						}
+						insert.executeBatch();
+					}
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+
+		@Override
+		public <T> T locked(FileLocks.LockedTask<T> task) throws IOException {
+			synchronized (DatabaseStatsRepository.this) {
+				try {
+					// The sublist is added first, as that is a transaction of its own
+					listId(list, sublist);
+					return inTransaction(database -> task.run());
+				} catch (SQLException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+	}
+}
@@ -16,6 +16,10 @@ public class ExtendedIOHelper extends IOHelper {
 		super.addLineToFile(line, string2path(path));
 	}
 	
+	public void addLinesToFile(List<String> lines, String path) {
+		super.addLinesToFile(lines, string2path(path));
+	}
+	
 	public void deleteIfExists(String path) {
 		super.deleteIfExists(string2path(path));
 	}
@@ -24,6 +28,10 @@ public class ExtendedIOHelper extends IOHelper {
 		return super.readAllLines(string2path(path));
 	}
 	
+	public List<String> readChecksummedLines(String path) throws CorruptFileException {
+		return super.readChecksummedLines(string2path(path));
+	}
+	
 	public void removeLineFromFile(String line, String path) {
 		super.removeLineFromFile(line, string2path(path));
 	}
@@ -32,6 +40,10 @@ public class ExtendedIOHelper extends IOHelper {
 		super.overwriteFile(lines, string2path(path));
 	}
 	
+	public void overwriteFile(List<String> lines, String path, boolean checksum) {
+		super.overwriteFile(lines, string2path(path), checksum);
+	}
+	
 	// Converts a string path to an actual path
 	private Path string2path(String path) {
 		return FileSystems.getDefault().getPath(path);
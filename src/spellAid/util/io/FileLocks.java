@@ -0,0 +1,82 @@
+package spellAid.util.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class lets several copies of the application, run by different users
+ * against the same user_lists directory, change the same files safely. A
+ * task that reads and then changes files is run while holding an exclusive
+ * lock on a lock file, so the other copies wait for it to finish instead of
+ * overwriting its changes.
+ *
+ * Each sublist has its own lock file, so copies working on different
+ * sublists never wait for each other. Within this application, threads are
+ * kept apart by a fixed set of in-process locks, chosen by the lock file's
+ * name, because the JVM does not allow two threads to lock the same file.
+ *
+ * A task must not lock another file while it holds a lock.
+ *
+ * @author Luke Tudor
+ */
+public class FileLocks {
+
+	private static final int STRIPES = 64;
+
+	private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+	static {
+		for (int i = 0; i < STRIPES; i++) {
+			LOCKS[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * A task run while a lock is held.
+	 */
+	public interface LockedTask<T> {
+		T run() throws IOException;
+	}
+
+	private FileLocks() {}
+
+	/**
+	 * Runs the task while holding the lock file exclusively, creating the
+	 * lock file if needed. This blocks until the lock is free. If the file
+	 * system cannot lock files, for example because the directory cannot be
+	 * written to, the task is run with only the in-process lock.
+	 */
+	public static <T> T withLock(Path lockFile, LockedTask<T> task) throws IOException {
+		ReentrantLock stripe = LOCKS[Math.floorMod(lockFile.toAbsolutePath().hashCode(), STRIPES)];
+		stripe.lock();
+		try {
+			FileChannel channel;
+			FileLock lock;
+			try {
+				channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				return task.run();
+			}
+			try {
+				try {
+					lock = channel.lock();
+				} catch (IOException e) {
+					return task.run();
+				}
+				try {
+					return task.run();
+				} finally {
+					lock.release();
+				}
+			} finally {
+				channel.close();
+			}
+		} finally {
+			stripe.unlock();
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package spellAid.util.io;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * This class keeps the fastest times taken to complete a sublist, both for
+ * everyone and for each user. Times are kept as elapsed nanoseconds.
+ *
+ * Each board is a heap bounded to the number of places it keeps, with the
+ * slowest time kept at its root. A new time only has to be compared with
+ * the root to know if it makes the board, and the slowest time is dropped
+ * when the board is full. Every user keeps their own fastest times, and the
+ * overall board is always made of times from the users' boards, so only the
+ * users' times are saved.
+ *
+ * The scores file has one "user name\tnanoseconds" line per time. Files
+ * written by older versions, with times as "hh:mm:ss", are read as well and
+ * are saved in the new form the next time a score is added. The file is
+ * replaced as a whole with a checksum, see IOHelper.overwriteFile(),
+ * so it is never left half-written and damage to it is noticed.
+ *
+ * The boards of each sublist are kept in memory once read, and are read
+ * again if the file is changed by something other than this application,
+ * see StatisticsWatcher. A repository may keep the times somewhere other
+ * than a scores file by giving its own Storage to forStorage().
+ *
+ * @author Luke Tudor
+ */
+public class HighScores {
+
+	/**
+	 * The number of places on a board, unless another number is asked for.
+	 */
+	public static final int DEFAULT_PLACES = 3;
+
+	private static final Comparator<Score> SLOWEST_FIRST = (a, b) -> Long.compare(b.nanos, a.nanos);
+
+	private static final Map<String, HighScores> LOADED = new HashMap<>();
+
+	private final Storage storage;
+
+	private final int places;
+
+	private final PriorityQueue<Score> overall;
+
+	private final Map<String, PriorityQueue<Score>> byUser;
+
+	private HighScores(Storage storage, int places) {
+		this.storage = storage;
+		this.places = places;
+		overall = new PriorityQueue<>(places + 1, SLOWEST_FIRST);
+		byUser = new HashMap<>();
+		load();
+	}
+
+	/**
+	 * Returns the high scores kept in the file, reading them if they are not
+	 * in memory yet. This should be called on the persistence writer thread.
+	 */
+	public static HighScores forFile(String scoreFile) {
+		return forFile(scoreFile, DEFAULT_PLACES);
+	}
+
+	/**
+	 * Like forFile(String), but the boards keep the given number of places.
+	 * If the scores are in memory with a different number of places, they are
+	 * read again.
+	 */
+	public static synchronized HighScores forFile(String scoreFile, int places) {
+		HighScores highScores = LOADED.get(scoreFile);
+		if (highScores == null || highScores.places != places) {
+			highScores = new HighScores(fileStorage(scoreFile), places);
+			LOADED.put(scoreFile, highScores);
+		}
+		return highScores;
+	}
+
+	/**
+	 * Returns the high scores kept in the storage, reading them if the
+	 * scores with the same key are not in memory yet. The boards keep
+	 * DEFAULT_PLACES places.
+	 */
+	public static synchronized HighScores forStorage(String key, Storage storage) {
+		HighScores highScores = LOADED.get(key);
+		if (highScores == null || highScores.places != DEFAULT_PLACES) {
+			highScores = new HighScores(storage, DEFAULT_PLACES);
+			LOADED.put(key, highScores);
+		}
+		return highScores;
+	}
+
+	/**
+	 * Returns the storage of a scores file, which is how forFile() keeps
+	 * the times.
+	 */
+	public static Storage fileStorage(String scoreFile) {
+		return new FileStorage(scoreFile);
+	}
+
+	/**
+	 * Forgets the scores of the file, so that they are read again.
+	 */
+	public static synchronized void evict(String scoreFile) {
+		LOADED.remove(scoreFile);
+	}
+
+	public static synchronized void evictAll() {
+		LOADED.clear();
+	}
+
+	/**
+	 * Adds the time if it is one of the user's fastest, and saves the boards
+	 * if they changed. Returns true if the time is on the overall board.
+	 *
+	 * The times are read again and saved while holding the storage's lock,
+	 * so that times added by other copies of the application at the same
+	 * time are kept.
+	 */
+	public synchronized boolean add(String user, long nanos) {
+		Score score = new Score(user, nanos);
+		try {
+			storage.locked(() -> {
+				overall.clear();
+				byUser.clear();
+				load();
+				if (offer(score)) {
+					save();
+				}
+				return null;
+			});
+		} catch (IOException e) {}
+		return overall.contains(score);
+	}
+
+	/**
+	 * Returns the fastest times of everyone, fastest first.
+	 */
+	public synchronized List<Score> getTop() {
+		return sorted(overall);
+	}
+
+	/**
+	 * Returns the user's fastest times, fastest first.
+	 */
+	public synchronized List<Score> getTop(String user) {
+		PriorityQueue<Score> board = byUser.get(user);
+		return board == null ? Collections.<Score>emptyList() : sorted(board);
+	}
+
+	/*
+	 * Puts the score on the user's board and the overall board, dropping the
+	 * slowest score of each if it is over full. Returns true if the score was
+	 * kept on the user's board.
+	 */
+	private boolean offer(Score score) {
+		PriorityQueue<Score> board = byUser.get(score.user);
+		if (board == null) {
+			board = new PriorityQueue<>(places + 1, SLOWEST_FIRST);
+			byUser.put(score.user, board);
+		}
+		if (!addBounded(board, score)) {
+			return false;
+		}
+		addBounded(overall, score);
+		return true;
+	}
+
+	// Returns false if the board is full and the score is no faster than its slowest
+	private boolean addBounded(PriorityQueue<Score> board, Score score) {
+		if (board.size() == places) {
+			if (board.peek().nanos <= score.nanos) {
+				return false;
+			}
+			board.poll();
+		}
+		board.add(score);
+		return true;
+	}
+
+	private static List<Score> sorted(PriorityQueue<Score> board) {
+		List<Score> scores = new ArrayList<>(board);
+		scores.sort(SLOWEST_FIRST.reversed());
+		return scores;
+	}
+
+	// Times that cannot be read leave the boards empty
+	private void load() {
+		try {
+			for (Score score : storage.read()) {
+				offer(score);
+			}
+		} catch (IOException e) {}
+	}
+
+	// Reads nanoseconds, or "hh:mm:ss" as written by older versions
+	private static long parseTime(String time) {
+		if (!time.contains(":")) {
+			return Long.parseLong(time);
+		}
+		long seconds = 0;
+		for (String part : time.split(":")) {
+			seconds = seconds * 60 + Long.parseLong(part);
+		}
+		return seconds * 1_000_000_000L;
+	}
+
+	private void save() throws IOException {
+		List<Score> scores = new ArrayList<>();
+		for (PriorityQueue<Score> board : byUser.values()) {
+			scores.addAll(board);
+		}
+		storage.write(scores);
+	}
+
+	/**
+	 * Where the times of one sublist are saved. Only the times on the users'
+	 * boards are ever written, all of them at once.
+	 */
+	public interface Storage {
+
+		/**
+		 * Returns every time saved, in any order.
+		 */
+		List<Score> read() throws IOException;
+
+		/**
+		 * Replaces every time saved with the times given.
+		 */
+		void write(List<Score> scores) throws IOException;
+
+		/**
+		 * Runs the task so that other copies of the application cannot change
+		 * the times until it has finished.
+		 */
+		<T> T locked(FileLocks.LockedTask<T> task) throws IOException;
+	}
+
+	/*
+	 * Keeps the times in a scores file. A damaged scores file is kept aside
+	 * as ".corrupt" rather than being replaced by the next save, and the
+	 * boards start empty.
+	 */
+	private static class FileStorage implements Storage {
+
+		private final Path scoreFile;
+
+		private final Path lockFile;
+
+		private final IOHelper ioHelper;
+
+		private FileStorage(String scoreFile) {
+			this.scoreFile = FileSystems.getDefault().getPath(scoreFile);
+			lockFile = FileSystems.getDefault().getPath(scoreFile + ".lock");
+			ioHelper = new IOHelper();
+		}
+
+		@Override
+		public List<Score> read() {
+			List<String> lines;
+			try {
+				lines = ioHelper.readChecksummedLines(scoreFile);
+			} catch (CorruptFileException e) {
+				try {
+					Files.move(scoreFile, scoreFile.resolveSibling(scoreFile.getFileName() + ".corrupt"),
+							StandardCopyOption.REPLACE_EXISTING);
+				} catch (IOException moveFailed) {}
+				return Collections.emptyList();
+			}
+			List<Score> scores = new ArrayList<>();
+			for (String line : lines) {
+				String[] chunks = line.split("\t");
+				if (chunks.length == 2) {
+					try {
+						scores.add(new Score(chunks[0], parseTime(chunks[1])));
+					} catch (NumberFormatException e) {}
+				}
+			}
+			return scores;
+		}
+
+		@Override
+		public void write(List<Score> scores) {
+			List<String> lines = new ArrayList<>();
+			for (Score score : scores) {
+				lines.add(score.user + "\t" + score.nanos);
+			}
+			ioHelper.overwriteFile(lines, scoreFile, true);
+			StatisticsWatcher.getDefault().noteWrite(scoreFile);
+		}
+
+		@Override
+		public <T> T locked(FileLocks.LockedTask<T> task) throws IOException {
+			return FileLocks.withLock(lockFile, task);
+		}
+	}
+
+	/**
+	 * One time taken to complete a sublist.
+	 */
+	public static class Score {
+		private final String user;
+		private final long nanos;
+
+		public Score(String user, long nanos) {
+			this.user = user;
+			this.nanos = nanos;
+		}
+
+		public String getUser() {
+			return user;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+	}
+}
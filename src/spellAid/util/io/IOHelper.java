@@ -1,15 +1,21 @@
 package spellAid.util.io;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * This class provides a list of list of methods for the SpellingAid class to use
@@ -29,6 +35,23 @@ public class IOHelper {
 	// Character encoding set used.
 	private static final Charset CHARSET = StandardCharsets.UTF_8;
 	
+	// The first line of a file written with a checksum
+	private static final String CHECKSUM_MARKER = "#checksummed";
+	
+	// Starts the last line of a file written with a checksum
+	private static final String CHECKSUM_PREFIX = "#crc32 ";
+	
+	/*
+	 * This method appends all of the lines to the specified file with a single
+	 * write, instead of opening the file once for each line.
+	 */
+	public void addLinesToFile(List<String> lines, Path filename){
+		try {
+			Files.write(filename, lines, CHARSET,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {}
+	}
+	
 	/*
 	 * This method converts a String to a Set<String> so that the line parameter
 	 * can be appended to the specified file. This is required because
@@ -53,11 +76,63 @@ public class IOHelper {
 		} catch (IOException e) {}
 	}
 	
+	/*
+	 * This method simply writes a file using the list as input and file name as
+	 * the destination. The file is replaced as a whole, see overwriteFile(List,
+	 * Path, boolean).
+	 */
+	public void overwriteFile(List<String> lines, Path filename) {
+		overwriteFile(lines, filename, false);
+	}
+	
+	/*
+	 * This method writes the lines to a temporary file and flushes it to disk,
+	 * then moves it over the file in one step and flushes the directory, so
+	 * that after a crash the file has either all of the old lines or all of
+	 * the new ones. If asked, a checksum marker and footer are added so that
+	 * damage to the file can be found by readChecksummedLines().
+	 */
+	public void overwriteFile(List<String> lines, Path filename, boolean checksum) {
+		StringBuilder text = new StringBuilder();
+		if (checksum) {
+			text.append(CHECKSUM_MARKER).append('\n');
+		}
+		for (String line : lines) {
+			text.append(line).append('\n');
+		}
+		if (checksum) {
+			text.append(checksumFooter(lines)).append('\n');
+		}
+		ByteBuffer bytes = CHARSET.encode(text.toString());
+
+		Path temp = filename.resolveSibling(filename.getFileName() + ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+				channel.force(true);
+			}
+			try {
+				Files.move(temp, filename, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, filename, StandardCopyOption.REPLACE_EXISTING);
+			}
+			syncDirectory(filename);
+		} catch (IOException e) {
+			deleteIfExists(temp);
+		}
+	}
+	
 	/*
 	 * This method reads an entire file and separates the file into a list.
 	 * The file is separated by the "new line" characters in the file.
 	 * If the file doesn't exist, an exception is thrown. In that case,
-	 * an empty list is returned instead.
+	 * an empty list is returned instead. Every line is returned as it is, so
+	 * a file written with a checksum should be read with
+	 * readChecksummedLines() instead.
 	 */
 	public List<String> readAllLines(Path filename){
 		List<String> fileLines = null;
@@ -69,31 +144,103 @@ public class IOHelper {
 		return fileLines;
 	}
 	
+	/*
+	 * Like readAllLines(), but the lines of a file written with a checksum
+	 * are checked against it, and the checksum marker and footer are not
+	 * returned as lines. Such a file starts with the marker line, so a file
+	 * that has been cut short, and has lost its footer, is known to be damaged
+	 * too. A damaged file throws a CorruptFileException instead of being read
+	 * wrongly.
+	 *
+	 * A file with no marker was written without a checksum, and every line
+	 * of it is returned as it is. A missing file is an empty list.
+	 */
+	public List<String> readChecksummedLines(Path filename) throws CorruptFileException {
+		List<String> fileLines;
+		try {
+			fileLines = Files.readAllLines(filename, CHARSET);
+		} catch (NoSuchFileException e) {
+			return new ArrayList<String>();
+		} catch (IOException e) {
+			throw new CorruptFileException(filename, e);
+		}
+		if (isChecksummed(fileLines)) {
+			checkAndRemoveChecksum(fileLines, filename);
+		}
+		return fileLines;
+	}
+	
 	/*
 	 * This method reads all lines of a file into a list. Then, all occurrences
 	 * of a line in that file are deleted. After that, the remaining lines are
-	 * written to that file.
+	 * written to that file. If the file doesn't exist, there is nothing to
+	 * remove. A file written with a checksum is checked first, and is left
+	 * alone if it is damaged, otherwise it is written with a new checksum.
 	 */
 	public void removeLineFromFile(String line, Path filename){
 		List<String> fileLines = null;
 		try {
 			fileLines = Files.readAllLines(filename, CHARSET);
-		} catch (IOException e){}
+		} catch (IOException e){
+			return;
+		}
 		
-		fileLines.removeAll(Collections.singleton(line));
+		boolean checksum = isChecksummed(fileLines);
+		if (checksum) {
+			try {
+				checkAndRemoveChecksum(fileLines, filename);
+			} catch (CorruptFileException e) {
+				return;
+			}
+		}
 		
-		try {
-			Files.write(filename, fileLines, CHARSET);
-		} catch (IOException e) {}
+		if (fileLines.removeAll(Collections.singleton(line))) {
+			overwriteFile(fileLines, filename, checksum);
+		}
 	}
 	
 	/*
-	 * This method simply writes a file using the list as input and file name as
-	 * the destination.
+	 * Removes the marker and footer from the lines of a file written with a
+	 * checksum, and checks the lines left against the footer. Throws a
+	 * CorruptFileException if the footer is missing or does not match.
 	 */
-	public void overwriteFile(List<String> lines, Path filename) {
-		try {
-			Files.write(filename, lines, CHARSET);
+	private static void checkAndRemoveChecksum(List<String> fileLines, Path filename)
+			throws CorruptFileException {
+		fileLines.remove(0);
+		String footer = fileLines.isEmpty() ? "" : fileLines.remove(fileLines.size() - 1);
+		if (!footer.equals(checksumFooter(fileLines))) {
+			throw new CorruptFileException(filename, null);
+		}
+	}
+	
+	/*
+	 * The footer holds a CRC32 of the lines between the marker and the
+	 * footer, each ending with a new line, so that it does not depend on the
+	 * line separator of the system.
+	 */
+	private static String checksumFooter(List<String> lines) {
+		CRC32 crc = new CRC32();
+		for (String line : lines) {
+			byte[] bytes = (line + "\n").getBytes(CHARSET);
+			crc.update(bytes, 0, bytes.length);
+		}
+		return CHECKSUM_PREFIX + Long.toHexString(crc.getValue());
+	}
+	
+	// Only a file starting with the marker line was written with a checksum
+	private static boolean isChecksummed(List<String> fileLines) {
+		return !fileLines.isEmpty() && fileLines.get(0).equals(CHECKSUM_MARKER);
+	}
+	
+	/*
+	 * Flushes the directory holding the file, so that the file's new name is
+	 * on disk. Not every system allows a directory to be opened, in which
+	 * case the move is left to be flushed by the system.
+	 */
+	private void syncDirectory(Path filename) {
+		Path directory = filename.toAbsolutePath().getParent();
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
 		} catch (IOException e) {}
 	}
 }
@@ -0,0 +1,112 @@
+package spellAid.util.io;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import spellAid.util.io.SublistStatistics.Answer;
+import spellAid.util.io.SublistStatistics.Result;
+
+/**
+ * This class gathers the answers given during a quiz in memory and commits
+ * them to the sublist's statistics together, instead of writing each
+ * answer as it is given. A commit hands every gathered answer to the
+ * StatsRepository at once, so it can add them in one write.
+ *
+ * Answers are committed when the quiz ends, when enough answers have been
+ * gathered, when the oldest answer has waited long enough, or when the
+ * application quits, whichever comes first. Commits are done on the
+ * persistence writer thread.
+ *
+ * @author Luke Tudor
+ */
+public class QuizResultRecorder {
+
+	// Answers are committed once this many have been gathered
+	private static final int MAX_ANSWERS = 20;
+
+	// Answers are committed once the oldest has waited this long
+	private static final long MAX_DELAY_SECONDS = 30;
+
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "result recorder timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Recorders with answers that have not been committed yet
+	private static final Set<QuizResultRecorder> OPEN_RECORDERS = new LinkedHashSet<>();
+
+	private final String list;
+
+	private final String sublist;
+
+	private List<Answer> pending;
+
+	private ScheduledFuture<?> timeLimit;
+
+	/**
+	 * The parameters are the list file and the name of the sublist being
+	 * quizzed, as used by StatsRepository.forSublist().
+	 */
+	public QuizResultRecorder(String list, String sublist) {
+		this.list = list;
+		this.sublist = sublist;
+		pending = new ArrayList<>();
+	}
+
+	/**
+	 * Commits the answers gathered by every recorder. This should be called
+	 * when the application quits, before the persistence writer is shut down.
+	 */
+	public static void commitAll() {
+		List<QuizResultRecorder> recorders;
+		synchronized (OPEN_RECORDERS) {
+			recorders = new ArrayList<>(OPEN_RECORDERS);
+		}
+		for (QuizResultRecorder recorder : recorders) {
+			recorder.commit();
+		}
+	}
+
+	/**
+	 * Gathers one answer for the word. Nothing is written until the answers
+	 * are committed.
+	 */
+	public synchronized void record(String word, Result result) {
+		pending.add(new Answer(word, result, System.currentTimeMillis()));
+		if (pending.size() == 1) {
+			synchronized (OPEN_RECORDERS) {
+				OPEN_RECORDERS.add(this);
+			}
+			timeLimit = TIMER.schedule(() -> commit(), MAX_DELAY_SECONDS, TimeUnit.SECONDS);
+		}
+		if (pending.size() >= MAX_ANSWERS) {
+			commit();
+		}
+	}
+
+	/**
+	 * Writes every gathered answer to the statistics. The future completes once
+	 * they are on disk.
+	 */
+	public synchronized CompletableFuture<Void> commit() {
+		if (pending.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		List<Answer> answers = pending;
+		pending = new ArrayList<>();
+		timeLimit.cancel(false);
+		synchronized (OPEN_RECORDERS) {
+			OPEN_RECORDERS.remove(this);
+		}
+		return AsyncIOHelper.getDefault().execute(
+				() -> StatsRepository.getDefault().forSublist(list, sublist).recordAll(answers));
+	}
+}
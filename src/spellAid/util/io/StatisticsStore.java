@@ -0,0 +1,572 @@
+package spellAid.util.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores how many times each word of a sublist has been mastered,
+ * faulted and failed. It replaces the old text files, which had a line added
+ * for every answer and so had to be read in full to count anything.
+ *
+ * The counters are kept in a memory-mapped file of fixed-width records, one
+ * per word, where the record's position is the word's id. Word ids are given
+ * out in the order words are first answered and are kept in a separate text
+ * file. Each answer is also appended to a write-ahead log, so recording an
+ * answer never rewrites the records. When the log gets long, its answers are
+ * folded into the records and a new log is started.
+ *
+ * The log and the records both carry a generation number. The records
+ * remember the generation of the last log folded into them, so a log that
+ * was already folded is never counted twice. Folding writes a whole new
+ * records file and moves it into place before the new log is started, so a
+ * crash leaves either the old records and old log, or the new records with
+ * the old log marked as folded.
+ *
+ * There is only ever one store open per sublist in this application, shared
+ * through forSublist(). Other copies of the application may use the same
+ * files at the same time, so every change is made while holding the
+ * sublist's lock file, see FileLocks. Before changing anything, the store
+ * first reads any words and answers the other copies have added since it
+ * last looked, so that word ids are never given out twice and no answer is
+ * lost when the log is folded. If another copy has folded the log, the store
+ * is read again from the start.
+ *
+ * @author Luke Tudor
+ */
+public class StatisticsStore implements SublistStatistics {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	// Identifies each file type, so that a damaged file is not misread
+	private static final int STATS_MAGIC = 0x56535354;
+	private static final int LOG_MAGIC = 0x5653574C;
+
+	// magic, record count, folded log generation, then padding
+	private static final int HEADER_BYTES = 32;
+
+	// mastered, faulted and failed counters, then the time last answered
+	private static final int RECORD_BYTES = 20;
+
+	// magic, log generation
+	private static final int LOG_HEADER_BYTES = 12;
+
+	// word id, result, time answered
+	private static final int LOG_ENTRY_BYTES = 13;
+
+	// The log is folded into the records once it has this many answers
+	private static final int COMPACT_AFTER = 1000;
+
+	private static final Map<String, StatisticsStore> OPEN_STORES = new HashMap<>();
+
+	private final String hiddenFile;
+
+	private final Path statsFile;
+	private final Path wordsFile;
+	private final Path logFile;
+	private final Path lockFile;
+
+	private final Map<String, Integer> ids;
+	private final List<String> words;
+
+	// Three counters per word id, in the order of Result
+	private int[] counts;
+	private long[] lastAnswered;
+
+	private FileChannel log;
+	private long logGeneration;
+	private int logEntries;
+
+	// Length of the log read or written so far, or -1 if there is no log of this generation
+	private long logBytes;
+
+	// Length of the word ids file read or written so far
+	private long wordsBytes;
+
+	private StatisticsStore(String hiddenFile) {
+		this.hiddenFile = hiddenFile;
+		statsFile = string2path(hiddenFile + ".stats");
+		wordsFile = string2path(hiddenFile + ".words.txt");
+		logFile = string2path(hiddenFile + ".log");
+		lockFile = string2path(hiddenFile + ".lock");
+
+		ids = new HashMap<>();
+		words = new ArrayList<>();
+		counts = new int[0];
+		lastAnswered = new long[0];
+		logBytes = -1;
+
+		try {
+			FileLocks.withLock(lockFile, () -> {
+				load();
+				return null;
+			});
+		} catch (IOException e) {}
+		noteWrites();
+	}
+
+	/**
+	 * Returns the store for the sublist, opening it if needed. The parameter
+	 * is the hidden file prefix of the sublist, for example
+	 * "user_lists/.NZCER-spelling-lists.Level 1".
+	 */
+	public static synchronized StatisticsStore forSublist(String hiddenFile) {
+		StatisticsStore store = OPEN_STORES.get(hiddenFile);
+		if (store == null) {
+			store = new StatisticsStore(hiddenFile);
+			OPEN_STORES.put(hiddenFile, store);
+		}
+		return store;
+	}
+
+	/**
+	 * Folds every open store's log into its records and closes it. This should
+	 * be called when the application quits.
+	 */
+	public static synchronized void closeAll() {
+		for (StatisticsStore store : OPEN_STORES.values()) {
+			store.close();
+		}
+		OPEN_STORES.clear();
+	}
+
+	/**
+	 * Closes every open store without saving anything more, so that their
+	 * files can be deleted.
+	 */
+	public static synchronized void discardAll() {
+		for (StatisticsStore store : OPEN_STORES.values()) {
+			store.closeLog();
+		}
+		OPEN_STORES.clear();
+	}
+
+	/**
+	 * Closes the sublist's store without saving anything more, so that it is
+	 * read from disk again the next time it is used. This is used when its
+	 * files have been changed by something other than this application.
+	 */
+	public static synchronized void evict(String hiddenFile) {
+		StatisticsStore store = OPEN_STORES.remove(hiddenFile);
+		if (store != null) {
+			store.closeLog();
+		}
+	}
+
+	/**
+	 * Records one answer for the word. This only appends to the log, so it
+	 * takes the same time however many answers have been recorded.
+	 */
+	public synchronized void record(String word, Result result) {
+		recordAll(Collections.singletonList(new Answer(word, result, System.currentTimeMillis())));
+	}
+
+	/**
+	 * Records a group of answers together. Any new words are added to the
+	 * word ids in one write, the answers are added to the log in one write,
+	 * and the log is flushed to disk once for the whole group.
+	 */
+	@Override
+	public synchronized void recordAll(List<Answer> answers) {
+		if (answers.isEmpty()) {
+			return;
+		}
+		try {
+			FileLocks.withLock(lockFile, () -> {
+				sync();
+				append(answers);
+				return null;
+			});
+		} catch (IOException e) {}
+		noteWrites();
+
+		if (logEntries >= COMPACT_AFTER) {
+			compact();
+		}
+	}
+
+	// Run while holding the lock
+	private void append(List<Answer> answers) throws IOException {
+		List<String> newWords = new ArrayList<>();
+		ByteBuffer entries = ByteBuffer.allocate(answers.size() * LOG_ENTRY_BYTES);
+		for (Answer answer : answers) {
+			int id = idFor(answer.getWord(), newWords);
+			counts[id * 3 + answer.getResult().ordinal()]++;
+			lastAnswered[id] = Math.max(lastAnswered[id], answer.getTime());
+			entries.putInt(id).put((byte) answer.getResult().ordinal()).putLong(answer.getTime());
+		}
+		entries.flip();
+
+		// The words must be saved before any log entry that refers to them
+		if (!newWords.isEmpty()) {
+			Files.write(wordsFile, newWords, CHARSET,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			wordsBytes = Files.size(wordsFile);
+		}
+		if (log == null) {
+			openLog();
+		}
+		while (entries.hasRemaining()) {
+			log.write(entries);
+		}
+		log.force(false);
+		logBytes += answers.size() * LOG_ENTRY_BYTES;
+		logEntries += answers.size();
+	}
+
+	/**
+	 * Returns the number of times the word has had the result.
+	 */
+	@Override
+	public synchronized int getCount(String word, Result result) {
+		Integer id = ids.get(word);
+		return id == null ? 0 : counts[id * 3 + result.ordinal()];
+	}
+
+	/**
+	 * Returns the time the word was last answered, in milliseconds since the
+	 * epoch, or 0 if it has never been answered.
+	 */
+	@Override
+	public synchronized long getLastAnswered(String word) {
+		Integer id = ids.get(word);
+		return id == null ? 0 : lastAnswered[id];
+	}
+
+	/**
+	 * Folds the log into the records and starts a new, empty log.
+	 */
+	public synchronized void compact() {
+		try {
+			FileLocks.withLock(lockFile, () -> {
+				sync();
+				writeRecords(logGeneration);
+				startLog(logGeneration + 1);
+				return null;
+			});
+		} catch (IOException e) {}
+		noteWrites();
+	}
+
+	/**
+	 * Compacts the store and closes its log.
+	 */
+	public synchronized void close() {
+		if (logEntries > 0) {
+			compact();
+		}
+		closeLog();
+	}
+
+	private void closeLog() {
+		if (log != null) {
+			try {
+				log.close();
+			} catch (IOException e) {}
+			log = null;
+		}
+	}
+
+	/*
+	 * Returns the id of the word, giving it a new id if it has none yet. New
+	 * words are added to the list so that the caller can save them together.
+	 */
+	private int idFor(String word, List<String> newWords) {
+		Integer id = ids.get(word);
+		if (id != null) {
+			return id;
+		}
+		id = words.size();
+		ids.put(word, id);
+		words.add(word);
+		newWords.add(word);
+		ensureCapacity(words.size());
+		return id;
+	}
+
+	// Tells the watcher that the files as they are now were written by this store
+	private void noteWrites() {
+		StatisticsWatcher watcher = StatisticsWatcher.getDefault();
+		watcher.noteWrite(statsFile);
+		watcher.noteWrite(wordsFile);
+		watcher.noteWrite(logFile);
+	}
+
+	private void ensureCapacity(int size) {
+		if (size > lastAnswered.length) {
+			int capacity = Math.max(size, lastAnswered.length * 2);
+			counts = Arrays.copyOf(counts, capacity * 3);
+			lastAnswered = Arrays.copyOf(lastAnswered, capacity);
+		}
+	}
+
+	/*
+	 * Reads the word ids, then the records, then any answers in the log that
+	 * have not been folded into the records yet. Run while holding the lock.
+	 */
+	private void load() throws IOException {
+		// A sublist with no word ids has never been answered with this store
+		if (!Files.exists(wordsFile)) {
+			importTextFiles();
+			return;
+		}
+
+		readNewWords();
+
+		long foldedGeneration = -1;
+		try (FileChannel channel = FileChannel.open(statsFile, StandardOpenOption.READ)) {
+			MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (records.getInt(0) == STATS_MAGIC) {
+				int recordCount = Math.min(records.getInt(4), words.size());
+				foldedGeneration = records.getLong(8);
+				for (int id = 0; id < recordCount; id++) {
+					int position = HEADER_BYTES + id * RECORD_BYTES;
+					counts[id * 3] = records.getInt(position);
+					counts[id * 3 + 1] = records.getInt(position + 4);
+					counts[id * 3 + 2] = records.getInt(position + 8);
+					lastAnswered[id] = records.getLong(position + 12);
+				}
+			}
+		} catch (IOException | IndexOutOfBoundsException e) {}
+
+		logGeneration = foldedGeneration + 1;
+		long generation = readLogGeneration();
+		if (generation > foldedGeneration) {
+			logGeneration = generation;
+			logBytes = replayLog(LOG_HEADER_BYTES);
+		}
+	}
+
+	/*
+	 * Catches up with the changes other copies of the application have made
+	 * since this store last looked. Run while holding the lock.
+	 */
+	private void sync() throws IOException {
+		boolean wordsShrunk = (Files.exists(wordsFile) ? Files.size(wordsFile) : 0) < wordsBytes;
+		long generation = readLogGeneration();
+		if (wordsShrunk || generation > logGeneration
+				|| (generation != logGeneration && logBytes >= 0)) {
+			// The files were cleared, or the log was folded by someone else
+			reload();
+			return;
+		}
+		readNewWords();
+		if (generation == logGeneration) {
+			logBytes = replayLog(Math.max(logBytes, LOG_HEADER_BYTES));
+		}
+	}
+
+	// Forgets everything in memory and reads the files again
+	private void reload() throws IOException {
+		closeLog();
+		ids.clear();
+		words.clear();
+		counts = new int[0];
+		lastAnswered = new long[0];
+		logGeneration = 0;
+		logEntries = 0;
+		logBytes = -1;
+		wordsBytes = 0;
+		load();
+	}
+
+	// Reads the word ids added to the end of the file since it was last read
+	private void readNewWords() throws IOException {
+		try (FileChannel channel = FileChannel.open(wordsFile, StandardOpenOption.READ)) {
+			ByteBuffer bytes = ByteBuffer.allocate((int) Math.max(0, channel.size() - wordsBytes));
+			while (bytes.hasRemaining() && channel.read(bytes, wordsBytes + bytes.position()) > 0) {}
+
+			// Only whole lines are read, in case a line is still being written
+			int end = bytes.position();
+			while (end > 0 && bytes.get(end - 1) != '\n') {
+				end--;
+			}
+			bytes.flip().limit(end);
+			String text = CHARSET.decode(bytes).toString();
+			int start = 0;
+			while (start < text.length()) {
+				int lineEnd = text.indexOf('\n', start);
+				String word = text.substring(start, lineEnd);
+				if (word.endsWith("\r")) {
+					word = word.substring(0, word.length() - 1);
+				}
+				ids.put(word, words.size());
+				words.add(word);
+				start = lineEnd + 1;
+			}
+			wordsBytes += end;
+		} catch (NoSuchFileException e) {}
+		ensureCapacity(words.size());
+	}
+
+	// The generation of the log on disk, or -1 if there is no valid log
+	private long readLogGeneration() throws IOException {
+		try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+			while (header.hasRemaining() && channel.read(header) > 0) {}
+			if (header.hasRemaining() || header.getInt(0) != LOG_MAGIC) {
+				return -1;
+			}
+			return header.getLong(4);
+		} catch (NoSuchFileException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Adds the answers in the log from the given position to the counters,
+	 * and returns the position after the last whole answer.
+	 */
+	private long replayLog(long from) throws IOException {
+		try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+			ByteBuffer entries = ByteBuffer.allocate((int) Math.max(0, channel.size() - from));
+			while (entries.hasRemaining() && channel.read(entries, from + entries.position()) > 0) {}
+			entries.flip();
+
+			long position = from;
+			while (entries.remaining() >= LOG_ENTRY_BYTES) {
+				int id = entries.getInt();
+				int result = entries.get();
+				long time = entries.getLong();
+				if (id < words.size() && result >= 0 && result < 3) {
+					counts[id * 3 + result]++;
+					lastAnswered[id] = Math.max(lastAnswered[id], time);
+					logEntries++;
+				}
+				position += LOG_ENTRY_BYTES;
+			}
+			return position;
+		} catch (NoSuchFileException e) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Counts the answers in the text files used by older versions and folds
+	 * them into a new store. The text files are left where they are, so older
+	 * versions and the text repository can still read them. Each file is read once,
+	 * a line at a time, into a single map of word -> counters, so the import
+	 * takes time proportional to the size of the files.
+	 */
+	private void importTextFiles() {
+		Map<String, int[]> frequencies = new LinkedHashMap<>();
+		for (Result result : Result.values()) {
+			try (BufferedReader reader = Files.newBufferedReader(textFileFor(hiddenFile, result), CHARSET)) {
+				String word;
+				while ((word = reader.readLine()) != null) {
+					frequencies.computeIfAbsent(word, w -> new int[3])[result.ordinal()]++;
+				}
+			} catch (IOException e) {}
+		}
+		if (frequencies.isEmpty()) {
+			return;
+		}
+
+		ensureCapacity(frequencies.size());
+		for (Map.Entry<String, int[]> frequency : frequencies.entrySet()) {
+			int id = words.size();
+			ids.put(frequency.getKey(), id);
+			words.add(frequency.getKey());
+			System.arraycopy(frequency.getValue(), 0, counts, id * 3, 3);
+		}
+
+		try {
+			Files.write(wordsFile, words, CHARSET);
+			wordsBytes = Files.size(wordsFile);
+			writeRecords(-1);
+		} catch (IOException e) {}
+	}
+
+	// The text file older versions used for the result, e.g. ".Level 1.failed.txt"
+	private static Path textFileFor(String hiddenFile, Result result) {
+		return string2path(hiddenFile + "." + result.name().toLowerCase() + ".txt");
+	}
+
+	/*
+	 * Writes every counter into a new records file, flushes it to disk and
+	 * only then moves it over the old one. The old records, and the
+	 * generation they say they have folded, stay whole until the move, so a
+	 * crash part way through never leaves records that count a log which
+	 * they also say has not been folded yet.
+	 */
+	private void writeRecords(long foldedGeneration) throws IOException {
+		long size = HEADER_BYTES + (long) words.size() * RECORD_BYTES;
+		Path temp = string2path(statsFile + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			records.putInt(0, STATS_MAGIC);
+			records.putInt(4, words.size());
+			records.putLong(8, foldedGeneration);
+			for (int id = 0; id < words.size(); id++) {
+				int position = HEADER_BYTES + id * RECORD_BYTES;
+				records.putInt(position, counts[id * 3]);
+				records.putInt(position + 4, counts[id * 3 + 1]);
+				records.putInt(position + 8, counts[id * 3 + 2]);
+				records.putLong(position + 12, lastAnswered[id]);
+			}
+			records.force();
+		}
+		Files.move(temp, statsFile, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Carries on appending to the log of this generation if there is one,
+	 * otherwise starts a new log. Any half-written answer at the end of the
+	 * log, left by a crash, is cut off first.
+	 */
+	private void openLog() throws IOException {
+		if (logBytes < 0) {
+			startLog(logGeneration);
+			return;
+		}
+		log = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		log.truncate(logBytes);
+	}
+
+	// Replaces the log with an empty one of the given generation
+	private void startLog(long generation) throws IOException {
+		closeLog();
+
+		Path temp = string2path(logFile + ".tmp");
+		ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+		header.putInt(LOG_MAGIC).putLong(generation).flip();
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+
+		log = FileChannel.open(logFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		logGeneration = generation;
+		logEntries = 0;
+		logBytes = LOG_HEADER_BYTES;
+	}
+
+	// Converts a string path to an actual path
+	private static Path string2path(String path) {
+		return FileSystems.getDefault().getPath(path);
+	}
+}
@@ -0,0 +1,159 @@
+package spellAid.util.io;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class watches the directory the statistics and high scores are kept
+ * in, so that the copies kept in memory by the StatsRepository and HighScores are
+ * thrown away when their files are changed by something other than this
+ * application, for example another copy of it sharing the same directory.
+ *
+ * The application notes each file it writes with noteWrite(). A change to a
+ * file whose size and modification time are still the ones noted is the
+ * application's own, and is ignored. Every other change is checked on the
+ * persistence writer thread, after any writes still waiting, and if it is
+ * still not the application's own, the copies in memory are discarded and
+ * read from disk again the next time they are used.
+ *
+ * @author Luke Tudor
+ */
+public class StatisticsWatcher {
+
+	// Suffixes of the files whose copies are kept in memory, by either repository
+	private static final String[] STATISTICS_SUFFIXES = {".stats", ".words.txt", ".log",
+			".mastered.txt", ".faulted.txt", ".failed.txt"};
+	private static final String SCORE_SUFFIX = ".score.txt";
+	private static final String DATABASE_SUFFIX = ".db";
+
+	private static StatisticsWatcher defaultWatcher;
+
+	// File -> size and modification time after the application last wrote it
+	private final Map<Path, String> ownWrites;
+
+	private StatisticsWatcher() {
+		ownWrites = new ConcurrentHashMap<>();
+	}
+
+	public static synchronized StatisticsWatcher getDefault() {
+		if (defaultWatcher == null) {
+			defaultWatcher = new StatisticsWatcher();
+		}
+		return defaultWatcher;
+	}
+
+	/**
+	 * Starts watching the directory on a background thread. If the file
+	 * system cannot be watched, nothing is watched and the copies in memory
+	 * are kept until the application quits.
+	 */
+	public void watch(String directory) {
+		Path dir = FileSystems.getDefault().getPath(directory);
+		WatchService service;
+		try {
+			service = dir.getFileSystem().newWatchService();
+			dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException e) {
+			return;
+		}
+
+		Thread watcher = new Thread(() -> run(dir, service), "statistics watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Remembers the file as it is now, so that the change just made to it
+	 * is not mistaken for someone else's. This must be called on the thread
+	 * that made the change.
+	 */
+	public void noteWrite(Path file) {
+		ownWrites.put(file.toAbsolutePath(), fingerprint(file));
+	}
+
+	private void run(Path dir, WatchService service) {
+		while (true) {
+			WatchKey key;
+			try {
+				key = service.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					// Events were lost, so nothing in memory can be trusted
+					AsyncIOHelper.getDefault().execute(() -> {
+						StatsRepository.getDefault().evictAll();
+						HighScores.evictAll();
+					});
+					continue;
+				}
+				changed(dir.resolve((Path) event.context()));
+			}
+			if (!key.reset()) {
+				return;
+			}
+		}
+	}
+
+	private void changed(Path file) {
+		String name = file.getFileName().toString();
+		if (!name.startsWith(".") || isOwnWrite(file)) {
+			return;
+		}
+
+		String path = file.toString();
+		if (path.endsWith(DATABASE_SUFFIX)) {
+			// The database holds every sublist's answers and scores
+			AsyncIOHelper.getDefault().execute(() -> {
+				if (!isOwnWrite(file)) {
+					StatsRepository.getDefault().evictAll();
+					HighScores.evictAll();
+				}
+			});
+			return;
+		}
+		if (path.endsWith(SCORE_SUFFIX)) {
+			AsyncIOHelper.getDefault().execute(() -> {
+				if (!isOwnWrite(file)) {
+					HighScores.evict(path);
+				}
+			});
+			return;
+		}
+		for (String suffix : STATISTICS_SUFFIXES) {
+			if (path.endsWith(suffix)) {
+				String hiddenFile = path.substring(0, path.length() - suffix.length());
+				AsyncIOHelper.getDefault().execute(() -> {
+					if (!isOwnWrite(file)) {
+						StatsRepository.getDefault().evict(hiddenFile);
+					}
+				});
+				return;
+			}
+		}
+	}
+
+	private boolean isOwnWrite(Path file) {
+		String noted = ownWrites.get(file.toAbsolutePath());
+		return noted != null && noted.equals(fingerprint(file));
+	}
+
+	// The size and modification time of the file, or "missing"
+	private static String fingerprint(Path file) {
+		try {
+			return Files.size(file) + "@" + Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return "missing";
+		}
+	}
+}
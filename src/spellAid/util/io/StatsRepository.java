@@ -0,0 +1,129 @@
+package spellAid.util.io;
+
+import java.nio.file.FileSystems;
+
+import spellAid.util.string.HiddenFileString;
+import spellAid.util.string.UnqualifiedFileString;
+
+/**
+ * This interface is where the statistics and high scores of every list are
+ * kept, so that the rest of the application never builds the names of the
+ * hidden files itself. The parameters called list are list files such as
+ * "user_lists/NZCER-spelling-lists.txt", and the sublists are the names of
+ * their "%" headers, such as "Level 1".
+ *
+ * There are three implementations, chosen with the voxspell.stats system
+ * property. StoreStatsRepository keeps the answers in an indexed
+ * StatisticsStore per sublist and is the default. TextStatsRepository keeps
+ * them in the text files used by older versions, one line per answer, and is
+ * used with -Dvoxspell.stats=text. DatabaseStatsRepository keeps every
+ * answer and high score in an embedded SQLite database, and is used with
+ * -Dvoxspell.stats=database if the SQLite JDBC driver is on the class path,
+ * otherwise the default is used. All of them keep high scores with
+ * HighScores.
+ *
+ * @author Luke Tudor
+ */
+public interface StatsRepository {
+
+	/**
+	 * The repository used by the application.
+	 */
+	StatsRepository DEFAULT = create(System.getProperty("voxspell.stats", ""));
+
+	public static StatsRepository getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Makes the repository with the name given to voxspell.stats.
+	 */
+	public static StatsRepository create(String name) {
+		switch (name) {
+		case "text":
+			return new TextStatsRepository();
+		case "database":
+			if (DatabaseStatsRepository.isAvailable()) {
+				return new DatabaseStatsRepository();
+			}
+			System.err.println("The SQLite JDBC driver is not on the class path,"
+					+ " so the statistics are kept in the default store instead");
+			return new StoreStatsRepository();
+		default:
+			return new StoreStatsRepository();
+		}
+	}
+
+	/**
+	 * Returns the statistics of the sublist, reading them if needed. The same
+	 * object is returned until the statistics are read again, for example
+	 * because another program changed them. This should be called on the
+	 * persistence writer thread.
+	 */
+	SublistStatistics forSublist(String list, String sublist);
+
+	/**
+	 * Forgets the statistics kept in memory for the files starting with the
+	 * hidden file prefix, so that they are read again.
+	 */
+	void evict(String hiddenFile);
+
+	/**
+	 * Forgets the statistics kept in memory for every sublist.
+	 */
+	void evictAll();
+
+	/**
+	 * Saves anything kept in memory and lets go of every file. This should be
+	 * called when the application quits.
+	 */
+	void closeAll();
+
+	/**
+	 * Forgets every statistic and high score and deletes their files.
+	 */
+	void deleteAll();
+
+	/**
+	 * Returns the high scores of the sublist. This should be called on the
+	 * persistence writer thread.
+	 */
+	default HighScores getHighScores(String list, String sublist) {
+		return HighScores.forFile(scoreFileFor(list, sublist));
+	}
+
+	/**
+	 * The prefix of the hidden statistics files of the sublist, for example
+	 * "user_lists/.NZCER-spelling-lists.Level 1".
+	 */
+	public static String hiddenFileFor(String list, String sublist) {
+		String name = list.endsWith(".txt") ? list.substring(0, list.length() - 4) : list;
+		return new HiddenFileString(name + "." + sublist).getHiddenFileString();
+	}
+
+	/**
+	 * The high scores file of the sublist, for example
+	 * "user_lists/.NZCER-spelling-lists.txt.Level 1.score.txt".
+	 */
+	public static String scoreFileFor(String list, String sublist) {
+		return "user_lists/." + new UnqualifiedFileString(list).getUnqualifiedFile()
+				+ "." + sublist + ".score.txt";
+	}
+
+	/**
+	 * Deletes every hidden file in user_lists, which is where the statistics
+	 * and high scores of every list are kept.
+	 */
+	public static void deleteStatisticsFiles() {
+		ExtendedIOHelper ioHelper = new ExtendedIOHelper();
+		String[] files = FileSystems.getDefault().getPath("user_lists").toFile().list();
+		if (files == null) {
+			return;
+		}
+		for (String file : files) {
+			if (file.startsWith(".")) {
+				ioHelper.deleteIfExists("user_lists/" + file);
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package spellAid.util.io;
+
+/**
+ * Keeps the answers of each sublist in a StatisticsStore, where counting
+ * the answers of a word is a lookup rather than a scan of its history.
+ *
+ * @author Luke Tudor
+ */
+public class StoreStatsRepository implements StatsRepository {
+
+	@Override
+	public SublistStatistics forSublist(String list, String sublist) {
+		return StatisticsStore.forSublist(StatsRepository.hiddenFileFor(list, sublist));
+	}
+
+	@Override
+	public void evict(String hiddenFile) {
+		StatisticsStore.evict(hiddenFile);
+	}
+
+	@Override
+	public void evictAll() {
+		StatisticsStore.discardAll();
+	}
+
+	@Override
+	public void closeAll() {
+		StatisticsStore.closeAll();
+	}
+
+	// The open stores must let go of their files before they are deleted
+	@Override
+	public void deleteAll() {
+		StatisticsStore.discardAll();
+		HighScores.evictAll();
+		StatsRepository.deleteStatisticsFiles();
+	}
+}
@@ -0,0 +1,77 @@
+package spellAid.util.io;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The statistics of one sublist: how many times each word has been
+ * mastered, faulted and failed, and when it was last answered. They are
+ * given out by a StatsRepository.
+ *
+ * @author Luke Tudor
+ */
+public interface SublistStatistics {
+
+	/**
+	 * The possible results of answering a word.
+	 */
+	public enum Result {
+		MASTERED, FAULTED, FAILED
+	}
+
+	/**
+	 * Records a group of answers together.
+	 */
+	void recordAll(List<Answer> answers);
+
+	/**
+	 * Returns the number of times the word has had the result.
+	 */
+	int getCount(String word, Result result);
+
+	/**
+	 * Returns the time the word was last answered, in milliseconds since the
+	 * epoch, or 0 if it is not known.
+	 */
+	long getLastAnswered(String word);
+
+	/**
+	 * Returns how many answers of the sublist were mastered, faulted and
+	 * failed on each day from the given day on, earliest day first. Days with
+	 * no answers are left out. Statistics that do not keep the times of the
+	 * answers return no days.
+	 */
+	default SortedMap<LocalDate, int[]> getDailyCounts(LocalDate since) {
+		return new TreeMap<>();
+	}
+
+	/**
+	 * One answer to a word, and the time it was given in milliseconds since
+	 * the epoch.
+	 */
+	public static class Answer {
+		private final String word;
+		private final Result result;
+		private final long time;
+
+		public Answer(String word, Result result, long time) {
+			this.word = word;
+			this.result = result;
+			this.time = time;
+		}
+
+		public String getWord() {
+			return word;
+		}
+
+		public Result getResult() {
+			return result;
+		}
+
+		public long getTime() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package spellAid.util.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import spellAid.util.io.SublistStatistics.Result;
+
+/**
+ * Keeps the answers of each sublist in the text files used by older
+ * versions, such as "user_lists/.NZCER-spelling-lists.Level 1.failed.txt",
+ * with one line holding the word for every time it had that result. The
+ * files are easy to read and change by hand, but each answer adds a line, so
+ * they keep growing, and the times of the answers are not kept.
+ *
+ * Each file is counted once, a line at a time, when the sublist is first
+ * used, and the counts are kept in memory from then on. A group of answers
+ * adds one write to each file it changes.
+ *
+ * The default repository folds these files into a sublist's store when the
+ * sublist has no store yet, and leaves them in place.
+ *
+ * @author Luke Tudor
+ */
+public class TextStatsRepository implements StatsRepository {
+
+	private final Map<String, TextFileStatistics> loaded = new HashMap<>();
+
+	@Override
+	public synchronized SublistStatistics forSublist(String list, String sublist) {
+		String hiddenFile = StatsRepository.hiddenFileFor(list, sublist);
+		TextFileStatistics statistics = loaded.get(hiddenFile);
+		if (statistics == null) {
+			statistics = new TextFileStatistics(hiddenFile);
+			loaded.put(hiddenFile, statistics);
+		}
+		return statistics;
+	}
+
+	@Override
+	public synchronized void evict(String hiddenFile) {
+		loaded.remove(hiddenFile);
+	}
+
+	@Override
+	public synchronized void evictAll() {
+		loaded.clear();
+	}
+
+	// Every answer is written as it is recorded, so there is nothing to save
+	@Override
+	public void closeAll() {
+		evictAll();
+	}
+
+	@Override
+	public void deleteAll() {
+		evictAll();
+		HighScores.evictAll();
+		StatsRepository.deleteStatisticsFiles();
+	}
+
+	private static class TextFileStatistics implements SublistStatistics {
+
+		private final Path lockFile;
+
+		private final Path[] files;
+
+		// word -> number of times mastered, faulted and failed
+		private final Map<String, int[]> counts;
+
+		private final ExtendedIOHelper ioHelper;
+
+		private TextFileStatistics(String hiddenFile) {
+			lockFile = FileSystems.getDefault().getPath(hiddenFile + ".lock");
+			files = new Path[Result.values().length];
+			for (Result result : Result.values()) {
+				files[result.ordinal()] = FileSystems.getDefault().getPath(
+						hiddenFile + "." + result.name().toLowerCase() + ".txt");
+			}
+			counts = new HashMap<>();
+			ioHelper = new ExtendedIOHelper();
+
+			try {
+				FileLocks.withLock(lockFile, () -> {
+					for (Result result : Result.values()) {
+						count(result);
+					}
+					return null;
+				});
+			} catch (IOException e) {}
+		}
+
+		@Override
+		public synchronized void recordAll(List<Answer> answers) {
+			List<List<String>> lines = new ArrayList<>();
+			for (int i = 0; i < files.length; i++) {
+				lines.add(new ArrayList<>());
+			}
+			for (Answer answer : answers) {
+				lines.get(answer.getResult().ordinal()).add(answer.getWord());
+				counts.computeIfAbsent(answer.getWord(), w -> new int[3])[answer.getResult().ordinal()]++;
+			}
+
+			try {
+				FileLocks.withLock(lockFile, () -> {
+					for (int i = 0; i < files.length; i++) {
+						if (!lines.get(i).isEmpty()) {
+							ioHelper.addLinesToFile(lines.get(i), files[i]);
+							StatisticsWatcher.getDefault().noteWrite(files[i]);
+						}
+					}
+					return null;
+				});
+			} catch (IOException e) {}
+		}
+
+		@Override
+		public synchronized int getCount(String word, Result result) {
+			int[] wordCounts = counts.get(word);
+			return wordCounts == null ? 0 : wordCounts[result.ordinal()];
+		}
+
+		// The text files do not keep the times of the answers
+		@Override
+		public long getLastAnswered(String word) {
+			return 0;
+		}
+
+		private void count(Result result) {
+			try (BufferedReader reader = Files.newBufferedReader(files[result.ordinal()],
+					StandardCharsets.UTF_8)) {
+				String word;
+				while ((word = reader.readLine()) != null) {
+					counts.computeIfAbsent(word, w -> new int[3])[result.ordinal()]++;
+				}
+			} catch (IOException e) {}
+		}
+	}
+}
@@ -0,0 +1,271 @@
+package spellAid.util.io;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import spellAid.util.string.HiddenFileString;
+
+/**
+ * This class reads a word list file, in which each sublist starts with a
+ * header line such as "%Level 1" followed by its words, one per line.
+ *
+ * The list is compiled into an index file next to it, for example
+ * "user_lists/.NZCER-spelling-lists.txt.index", which is memory-mapped when
+ * the list is opened. The index remembers the size and modification time of
+ * the list file it was made from and is only made again when they change, so
+ * an unchanged list is never parsed twice.
+ *
+ * The index has a header, a table of sublists, a table of words and a pool
+ * of the UTF-8 bytes of every name and word:
+ *
+ * <pre>
+ * header    magic, version, list modified time, list size,
+ *           sublist count, word count
+ * sublists  name offset, name length, index of first word
+ * words     offset, length
+ * pool      bytes
+ * </pre>
+ *
+ * Only the names of the sublists are decoded when a list is opened. The
+ * words of a sublist are decoded when they are first asked for, and only the
+ * sublist asked for most recently is kept.
+ *
+ * @author Luke Tudor
+ */
+public class WordList {
+
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	private static final int INDEX_MAGIC = 0x56535749;
+
+	private static final int INDEX_VERSION = 1;
+
+	private static final int HEADER_BYTES = 32;
+
+	// name offset, name length, first word
+	private static final int SUBLIST_BYTES = 12;
+
+	// offset, length
+	private static final int WORD_BYTES = 8;
+
+	private final ByteBuffer index;
+
+	private final List<String> sublists;
+
+	private final int wordCount;
+
+	private final int wordTable;
+
+	private final int pool;
+
+	private int loadedIndex;
+
+	private Set<String> loadedWords;
+
+	private WordList(ByteBuffer index) {
+		this.index = index;
+		int sublistCount = index.getInt(24);
+		wordCount = index.getInt(28);
+		wordTable = HEADER_BYTES + sublistCount * SUBLIST_BYTES;
+		pool = wordTable + wordCount * WORD_BYTES;
+		loadedIndex = -1;
+
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < sublistCount; i++) {
+			int entry = HEADER_BYTES + i * SUBLIST_BYTES;
+			names.add(decode(index.getInt(entry), index.getInt(entry + 4)));
+		}
+		sublists = Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * Opens the word list file through its index, compiling the index first
+	 * if it is missing or out of date. If the index cannot be saved, the
+	 * compiled index is used from memory instead. A file that cannot be read
+	 * gives a list with no sublists.
+	 */
+	public static WordList open(String path) {
+		Path source = FileSystems.getDefault().getPath(path);
+		Path indexFile = FileSystems.getDefault().getPath(
+				new HiddenFileString(path).getHiddenFileString() + ".index");
+
+		long modified = 0;
+		long size = 0;
+		try {
+			modified = Files.getLastModifiedTime(source).toMillis();
+			size = Files.size(source);
+		} catch (IOException e) {}
+
+		ByteBuffer index = mapIndex(indexFile, modified, size);
+		if (index == null) {
+			index = compile(source, modified, size);
+			// A list that could not be read is not worth an index
+			if (size == 0) {
+				return new WordList(index);
+			}
+			try {
+				save(index, indexFile);
+				ByteBuffer mapped = mapIndex(indexFile, modified, size);
+				if (mapped != null) {
+					index = mapped;
+				}
+			} catch (IOException e) {}
+		}
+		return new WordList(index);
+	}
+
+	/**
+	 * Returns the names of the sublists, in the order they are in the file.
+	 */
+	public List<String> getSublists() {
+		return sublists;
+	}
+
+	public int indexOf(String sublist) {
+		return sublists.indexOf(sublist);
+	}
+
+	/**
+	 * Returns the words of the sublist, decoding them from the index unless
+	 * they were the last words asked for.
+	 */
+	public synchronized Set<String> getWords(int sublist) {
+		if (sublist != loadedIndex) {
+			int first = index.getInt(HEADER_BYTES + sublist * SUBLIST_BYTES + 8);
+			int last = sublist + 1 < sublists.size()
+					? index.getInt(HEADER_BYTES + (sublist + 1) * SUBLIST_BYTES + 8)
+					: wordCount;
+
+			Set<String> words = new LinkedHashSet<>();
+			for (int word = first; word < last; word++) {
+				int entry = wordTable + word * WORD_BYTES;
+				words.add(decode(index.getInt(entry), index.getInt(entry + 4)));
+			}
+			loadedWords = Collections.unmodifiableSet(words);
+			loadedIndex = sublist;
+		}
+		return loadedWords;
+	}
+
+	private String decode(int offset, int length) {
+		ByteBuffer bytes = index.duplicate();
+		bytes.position(pool + offset).limit(pool + offset + length);
+		return CHARSET.decode(bytes).toString();
+	}
+
+	/*
+	 * Maps the index file, or returns null if it is missing, damaged or was
+	 * made from a different version of the list.
+	 */
+	private static ByteBuffer mapIndex(Path indexFile, long modified, long size) {
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				return null;
+			}
+			ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != INDEX_VERSION
+					|| index.getLong(8) != modified || index.getLong(16) != size) {
+				return null;
+			}
+			return index;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Reads the list file once, a line at a time, and builds its index in
+	 * memory. Lines before the first header do not belong to a sublist and
+	 * are left out.
+	 */
+	private static ByteBuffer compile(Path source, long modified, long size) {
+		IntList sublistTable = new IntList();
+		IntList wordTable = new IntList();
+		ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+		try (BufferedReader reader = Files.newBufferedReader(source, CHARSET)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				boolean header = line.startsWith("%");
+				if (!header && sublistTable.size() == 0) {
+					continue;
+				}
+				byte[] bytes = (header ? line.substring(1) : line).getBytes(CHARSET);
+				IntList table = header ? sublistTable : wordTable;
+				table.add(pool.size());
+				table.add(bytes.length);
+				if (header) {
+					table.add(wordTable.size() / 2);
+				}
+				pool.write(bytes, 0, bytes.length);
+			}
+		} catch (IOException e) {}
+
+		int sublistCount = sublistTable.size() / 3;
+		int wordCount = wordTable.size() / 2;
+		ByteBuffer index = ByteBuffer.allocate(HEADER_BYTES + sublistCount * SUBLIST_BYTES
+				+ wordCount * WORD_BYTES + pool.size());
+		index.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putLong(modified).putLong(size)
+				.putInt(sublistCount).putInt(wordCount);
+		for (int i = 0; i < sublistTable.size(); i++) {
+			index.putInt(sublistTable.get(i));
+		}
+		for (int i = 0; i < wordTable.size(); i++) {
+			index.putInt(wordTable.get(i));
+		}
+		index.put(pool.toByteArray());
+		index.flip();
+		return index;
+	}
+
+	// Saves the index to a temporary file first, so a half-written index is never mapped
+	private static void save(ByteBuffer index, Path indexFile) throws IOException {
+		Path temp = FileSystems.getDefault().getPath(indexFile + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer bytes = index.duplicate();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// A growable list of ints, so that the tables are not built from Integers
+	private static class IntList {
+		private int[] values = new int[64];
+		private int size;
+
+		private void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		private int get(int i) {
+			return values[i];
+		}
+
+		private int size() {
+			return size;
+		}
+	}
+}
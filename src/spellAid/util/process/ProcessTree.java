@@ -0,0 +1,75 @@
+package spellAid.util.process;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stops a process together with every process it started, such as
+ * the 'aplay' process festival uses to play audio. Only the processes that
+ * descend from the given process are stopped, so processes belonging to
+ * anybody else on the same machine are never affected.
+ * 
+ * @author Luke Tudor
+ */
+public class ProcessTree {
+
+	/*
+	 * Stops the children of the process first, so that they cannot be handed
+	 * to another parent and keep running, then stops the process itself.
+	 */
+	public static void destroy(Process process) {
+		long pid = pidOf(process);
+		if (pid > 0) {
+			destroyDescendants(pid);
+		}
+		process.destroy();
+	}
+
+	private static void destroyDescendants(long pid) {
+		for (long child : childrenOf(pid)) {
+			destroyDescendants(child);
+			try {
+				new ProcessBuilder("kill", Long.toString(child)).start().waitFor();
+			} catch (IOException | InterruptedException e) {}
+		}
+	}
+
+	// Uses pgrep to list the processes whose parent is the given process
+	private static List<Long> childrenOf(long pid) {
+		List<Long> children = new ArrayList<>();
+		try {
+			Process pgrep = new ProcessBuilder("pgrep", "-P", Long.toString(pid)).start();
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(pgrep.getInputStream()))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					children.add(Long.parseLong(line.trim()));
+				}
+			}
+			pgrep.waitFor();
+		} catch (IOException | InterruptedException | NumberFormatException e) {}
+		return children;
+	}
+
+	/*
+	 * Process has no pid() method before Java 9, so the pid is read from the
+	 * platform's process class instead. Returns -1 if the pid is not available.
+	 */
+	private static long pidOf(Process process) {
+		try {
+			Method pid = Process.class.getMethod("pid");
+			return (Long) pid.invoke(process);
+		} catch (ReflectiveOperationException e) {}
+		try {
+			Field pid = process.getClass().getDeclaredField("pid");
+			pid.setAccessible(true);
+			return pid.getInt(process);
+		} catch (ReflectiveOperationException | RuntimeException e) {}
+		return -1;
+	}
+}
@@ -0,0 +1,201 @@
+package spellAid.util.schedule;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import spellAid.util.io.StatsRepository;
+import spellAid.util.io.SublistStatistics;
+import spellAid.util.io.SublistStatistics.Result;
+
+/**
+ * This class chooses which words of a sublist to test, so that the words a
+ * user gets wrong come up more often than the words they always get right.
+ *
+ * Each word is kept in a Leitner box from 0 to MAX_BOX. Spelling a word
+ * correctly first time moves it up a box, needing a second try moves it down
+ * one, and failing it moves it down two. The higher the box, the longer the
+ * word waits before it is due again, and the wait is shortened by the
+ * fraction of times the word has been got wrong. The box is worked out from
+ * the word's counts in its statistics, so nothing extra is saved.
+ *
+ * Words are kept sorted by the time they are next due, so choosing the words
+ * of a quiz only looks at the words chosen, and an answer only moves the
+ * word answered. Words never answered are due from the time the scheduler
+ * was made, so words that were got wrong in earlier sessions come first.
+ * Some statistics do not know when a word was answered, for example counts
+ * read from the text files of older versions. Such a word is treated as
+ * answered the longest wait ago, and earlier still the more often it was got
+ * wrong, so its counts still decide its place. Words due at the same time are
+ * put in a random order.
+ *
+ * There is one scheduler per sublist, shared through forSublist().
+ *
+ * @author Luke Tudor
+ */
+public class WordScheduler {
+
+	private static final int MAX_BOX = 4;
+
+	// How long a word in each box waits after it was answered, in milliseconds
+	private static final long[] BOX_INTERVALS = {
+			0,
+			10 * 60 * 1000L,
+			24 * 60 * 60 * 1000L,
+			3 * 24 * 60 * 60 * 1000L,
+			7 * 24 * 60 * 60 * 1000L
+	};
+
+	private static final Map<String, WordScheduler> SCHEDULERS = new HashMap<>();
+
+	// The statistics this scheduler was made from
+	private final SublistStatistics statistics;
+
+	private final Map<String, Entry> entries;
+
+	private final TreeSet<Entry> byDue;
+
+	private final long created;
+
+	private WordScheduler(SublistStatistics statistics, Set<String> words, SplittableRandom random) {
+		this.statistics = statistics;
+		entries = new HashMap<>();
+		byDue = new TreeSet<>();
+		created = System.currentTimeMillis();
+
+		for (String word : words) {
+			Entry entry = new Entry(word, random.nextInt());
+			for (Result result : Result.values()) {
+				entry.counts[result.ordinal()] = statistics.getCount(word, result);
+			}
+			entry.lastAnswered = statistics.getLastAnswered(word);
+			entry.due = dueTime(entry);
+			entries.put(word, entry);
+			byDue.add(entry);
+		}
+	}
+
+	/**
+	 * Returns the scheduler for the sublist, making it from the sublist's
+	 * statistics if needed. The parameters are the list file and the name of
+	 * the sublist, as used by StatsRepository.forSublist(). If the words of
+	 * the sublist have changed, or its statistics have been read again because
+	 * they were changed outside the application, a new scheduler is made.
+	 */
+	public static synchronized WordScheduler forSublist(String list, String sublist, Set<String> words) {
+		String key = StatsRepository.hiddenFileFor(list, sublist);
+		WordScheduler scheduler = SCHEDULERS.get(key);
+		SublistStatistics statistics = StatsRepository.getDefault().forSublist(list, sublist);
+		if (scheduler == null || scheduler.statistics != statistics
+				|| !scheduler.entries.keySet().equals(words)) {
+			scheduler = new WordScheduler(statistics, words, new SplittableRandom());
+			SCHEDULERS.put(key, scheduler);
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Makes a scheduler for the words from the statistics, which is not
+	 * shared through forSublist(). This is used to check the order words are
+	 * chosen in.
+	 */
+	public static WordScheduler forStatistics(SublistStatistics statistics, Set<String> words,
+			SplittableRandom random) {
+		return new WordScheduler(statistics, words, random);
+	}
+
+	/**
+	 * Forgets every scheduler, so that they are made again from the
+	 * statistics. This should be called when the statistics are cleared.
+	 */
+	public static synchronized void discardAll() {
+		SCHEDULERS.clear();
+	}
+
+	/**
+	 * Returns the words due soonest, at most count of them, with no word
+	 * repeated.
+	 */
+	public synchronized String[] nextWords(int count) {
+		String[] words = new String[Math.min(count, byDue.size())];
+		Iterator<Entry> soonest = byDue.iterator();
+		for (int i = 0; i < words.length; i++) {
+			words[i] = soonest.next().word;
+		}
+		return words;
+	}
+
+	/**
+	 * Moves the word to its new place after it has been answered.
+	 */
+	public synchronized void record(String word, Result result) {
+		Entry entry = entries.get(word);
+		if (entry == null) {
+			return;
+		}
+		byDue.remove(entry);
+		entry.counts[result.ordinal()]++;
+		entry.lastAnswered = System.currentTimeMillis();
+		entry.due = dueTime(entry);
+		byDue.add(entry);
+	}
+
+	/*
+	 * The box is how many more times the word has been mastered than it has
+	 * been got wrong, counting a failure twice.
+	 */
+	private static int boxOf(Entry entry) {
+		int box = entry.counts[Result.MASTERED.ordinal()]
+				- entry.counts[Result.FAULTED.ordinal()]
+				- 2 * entry.counts[Result.FAILED.ordinal()];
+		return Math.max(0, Math.min(MAX_BOX, box));
+	}
+
+	private long dueTime(Entry entry) {
+		int attempts = entry.counts[0] + entry.counts[1] + entry.counts[2];
+		if (attempts == 0) {
+			return created;
+		}
+		double wrong = (double) (entry.counts[Result.FAULTED.ordinal()]
+				+ entry.counts[Result.FAILED.ordinal()]) / attempts;
+
+		// A word answered at an unknown time is taken to have waited the longest wait, or more if often wrong
+		long answered = entry.lastAnswered;
+		if (answered == 0) {
+			answered = created - (long) (BOX_INTERVALS[MAX_BOX] * (1 + wrong));
+		}
+		return answered + (long) (BOX_INTERVALS[boxOf(entry)] * (1 - wrong));
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		private final String word;
+
+		// Breaks ties between words due at the same time
+		private final int tieBreak;
+
+		private final int[] counts = new int[3];
+
+		private long lastAnswered;
+
+		private long due;
+
+		private Entry(String word, int tieBreak) {
+			this.word = word;
+			this.tieBreak = tieBreak;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (due != other.due) {
+				return Long.compare(due, other.due);
+			}
+			if (tieBreak != other.tieBreak) {
+				return Integer.compare(tieBreak, other.tieBreak);
+			}
+			return word.compareTo(other.word);
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package spellAid.util.video;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import spellAid.util.process.ProcessTree;
+
+/**
+ * This class runs ffmpeg to render one video, and reports how far it has got
+ * while it runs.
+ *
+ * ffmpeg is started with "-progress pipe:1", so it writes blocks of
+ * "key=value" lines to its standard output as it encodes. Each block ends
+ * with a "progress" line, and gives the time reached in the output video, the
+ * frames encoded per second and the encoding speed. The length of the input
+ * video is read from the "Duration:" line ffmpeg prints on its standard error,
+ * so the fraction done and the time left are exact.
+ *
+ * The video is written to a partial file next to the output, which replaces
+ * the output only once ffmpeg has finished successfully. A failed or
+ * cancelled render leaves the previous output untouched.
+ *
+ * At most MAX_PROCESSES ffmpeg processes run at once across the whole
+ * application, leaving a core free for the rest of it. A render waits for
+ * one of the others to finish before starting ffmpeg.
+ *
+ * @author Luke Tudor
+ */
+public class FFmpegRender implements VideoRender {
+
+	// How long ffmpeg is given to stop after being asked to, before it is killed
+	private static final long STOP_TIMEOUT_SECONDS = 2;
+
+	static final int MAX_PROCESSES = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+	private static final Semaphore PROCESSES = new Semaphore(MAX_PROCESSES, true);
+
+	private static final Pattern DURATION = Pattern.compile(
+			"Duration: (\\d+):(\\d{2}):(\\d{2})\\.(\\d+)");
+
+	private final List<String> command;
+
+	private final Path output;
+
+	private final Path partial;
+
+	private Process process;
+
+	private boolean cancelled;
+
+	private volatile long durationMicros;
+
+	private volatile RenderProgress lastProgress;
+
+	/**
+	 * The options are the ffmpeg options put between the input and output
+	 * files, such as "-vf" and "negate", one per element.
+	 */
+	public FFmpegRender(String input, List<String> options, String output) {
+		this.output = FileSystems.getDefault().getPath(output);
+		partial = this.output.resolveSibling(partialName(this.output.getFileName().toString()));
+
+		command = new ArrayList<>();
+		command.add("ffmpeg");
+		command.add("-y");
+		command.add("-nostats");
+		command.add("-progress");
+		command.add("pipe:1");
+		command.add("-i");
+		command.add(input);
+		command.addAll(options);
+		command.add("-strict");
+		command.add("-2");
+		command.add(partial.toString());
+
+		durationMicros = -1;
+		lastProgress = new RenderProgress(0, -1, 0, 0, false);
+	}
+
+	/**
+	 * Runs ffmpeg and waits for it to finish, telling the listener about its
+	 * progress as it goes.
+	 */
+	@Override
+	public boolean run(ProgressListener listener) {
+		if (!acquireProcess(this)) {
+			return false;
+		}
+		try {
+			return runProcess(listener);
+		} finally {
+			releaseProcess();
+		}
+	}
+
+	/**
+	 * Waits until another ffmpeg process may be started, or the render is
+	 * cancelled. Returns true if the process may be started, in which case
+	 * releaseProcess() must be called once it has finished.
+	 */
+	static boolean acquireProcess(VideoRender render) {
+		try {
+			while (!PROCESSES.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+				if (render.isCancelled()) {
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			return false;
+		}
+		if (render.isCancelled()) {
+			PROCESSES.release();
+			return false;
+		}
+		return true;
+	}
+
+	static void releaseProcess() {
+		PROCESSES.release();
+	}
+
+	private boolean runProcess(ProgressListener listener) {
+		Process started;
+		synchronized (this) {
+			if (cancelled) {
+				return false;
+			}
+			try {
+				process = new ProcessBuilder(command).start();
+			} catch (IOException e) {
+				return false;
+			}
+			started = process;
+		}
+
+		Thread errors = new Thread(() -> readErrors(started), "ffmpeg errors");
+		errors.setDaemon(true);
+		errors.start();
+
+		boolean succeeded;
+		try {
+			readProgress(started, listener);
+			succeeded = started.waitFor() == 0;
+		} catch (InterruptedException e) {
+			cancel();
+			succeeded = false;
+		}
+
+		synchronized (this) {
+			succeeded = succeeded && !cancelled;
+			process = null;
+		}
+		try {
+			if (succeeded) {
+				replaceOutput();
+				lastProgress = new RenderProgress(lastProgress.getOutTimeMicros(), durationMicros,
+						lastProgress.getFps(), lastProgress.getSpeed(), true);
+				listener.progressed(lastProgress);
+			} else {
+				Files.deleteIfExists(partial);
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		return succeeded;
+	}
+
+	/**
+	 * Stops the render. ffmpeg is asked to stop by sending it "q", which it
+	 * answers by closing its files, and is killed if it has not stopped soon
+	 * after.
+	 */
+	@Override
+	public synchronized void cancel() {
+		cancelled = true;
+		if (process == null) {
+			return;
+		}
+		Process stopping = process;
+		try {
+			OutputStream in = stopping.getOutputStream();
+			in.write('q');
+			in.flush();
+		} catch (IOException e) {}
+
+		Thread killer = new Thread(() -> {
+			try {
+				if (!stopping.waitFor(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					ProcessTree.destroy(stopping);
+				}
+			} catch (InterruptedException e) {}
+		}, "ffmpeg stopper");
+		killer.setDaemon(true);
+		killer.start();
+	}
+
+	@Override
+	public Path getOutput() {
+		return output;
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public RenderProgress getLastProgress() {
+		return lastProgress;
+	}
+
+	/*
+	 * Reads the blocks ffmpeg writes to its standard output until it closes
+	 * it. The values of a block are kept until its "progress" line, which
+	 * says whether more blocks will follow.
+	 */
+	private void readProgress(Process started, ProgressListener listener) {
+		long outTime = 0;
+		double fps = 0;
+		double speed = 0;
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(started.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int equals = line.indexOf('=');
+				if (equals < 0) {
+					continue;
+				}
+				String key = line.substring(0, equals).trim();
+				String value = line.substring(equals + 1).trim();
+				switch (key) {
+				// Despite its name, out_time_ms is in microseconds
+				case "out_time_ms":
+					outTime = parseLong(value, outTime);
+					break;
+				case "fps":
+					fps = parseDouble(value, fps);
+					break;
+				case "speed":
+					speed = parseDouble(value.replace("x", ""), speed);
+					break;
+				case "progress":
+					lastProgress = new RenderProgress(outTime, durationMicros, fps, speed, false);
+					listener.progressed(lastProgress);
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (IOException e) {}
+	}
+
+	// Reads the length of the input, and throws the rest away so ffmpeg never blocks on it
+	private void readErrors(Process started) {
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(started.getErrorStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (durationMicros < 0) {
+					Matcher duration = DURATION.matcher(line);
+					if (duration.find()) {
+						durationMicros = parseDuration(duration);
+					}
+				}
+			}
+		} catch (IOException e) {}
+	}
+
+	private static long parseDuration(Matcher duration) {
+		long seconds = Long.parseLong(duration.group(1)) * 3600
+				+ Long.parseLong(duration.group(2)) * 60
+				+ Long.parseLong(duration.group(3));
+		// The fraction of a second, given to any number of places
+		String fraction = (duration.group(4) + "000000").substring(0, 6);
+		return seconds * 1_000_000 + Long.parseLong(fraction);
+	}
+
+	private void replaceOutput() throws IOException {
+		try {
+			Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	// "out.mp4" becomes "out.partial.mp4", keeping the extension ffmpeg picks the format from
+	static String partialName(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? name + ".partial" : name.substring(0, dot) + ".partial" + name.substring(dot);
+	}
+
+	// ffmpeg reports "N/A" for values it does not know yet
+	private static long parseLong(String value, long previous) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return previous;
+		}
+	}
+
+	private static double parseDouble(String value, double previous) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return previous;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package spellAid.util.video;
+
+import java.util.stream.IntStream;
+
+/**
+ * This class applies the changes of a VideoSettings to a picture in memory,
+ * so that they can be previewed without running ffmpeg. Pixels are ARGB ints,
+ * as read and written by JavaFX's PixelReader and PixelWriter.
+ *
+ * It follows ffmpeg's eq and negate filters closely enough to preview them.
+ * Each pixel is turned into luma and two colour differences. Contrast scales
+ * the luma about its middle value and brightness is then added to it.
+ * Saturation scales the colour differences. The result is turned back into
+ * red, green and blue and, if asked for, inverted.
+ *
+ * The rows of the picture are filtered in parallel.
+ *
+ * @author Luke Tudor
+ */
+public class FrameFilter {
+
+	private FrameFilter() {}
+
+	/**
+	 * Filters the source pixels into the destination, which must be at least
+	 * as big. Both are width * height pixels, a row at a time.
+	 */
+	public static void apply(VideoSettings settings, int[] source, int[] destination, int width, int height) {
+		double contrast = settings.getContrast();
+		double brightness = settings.getBrightness();
+		double saturation = settings.getSaturation();
+		boolean negate = settings.isNegate();
+
+		IntStream.range(0, height).parallel().forEach(row -> {
+			int end = (row + 1) * width;
+			for (int i = row * width; i < end; i++) {
+				int argb = source[i];
+				double r = ((argb >> 16) & 0xff) / 255.0;
+				double g = ((argb >> 8) & 0xff) / 255.0;
+				double b = (argb & 0xff) / 255.0;
+
+				// BT.601, the colour space ffmpeg's eq filter works in
+				double y = 0.299 * r + 0.587 * g + 0.114 * b;
+				double u = (b - y) * saturation;
+				double v = (r - y) * saturation;
+				y = (y - 0.5) * contrast + 0.5 + brightness;
+
+				int red = toByte(y + v);
+				int blue = toByte(y + u);
+				int green = toByte(y - (0.299 * v + 0.114 * u) / 0.587);
+				if (negate) {
+					red = 255 - red;
+					green = 255 - green;
+					blue = 255 - blue;
+				}
+				destination[i] = (argb & 0xff000000) | (red << 16) | (green << 8) | blue;
+			}
+		});
+	}
+
+	private static int toByte(double value) {
+		return (int) Math.round(Math.max(0, Math.min(1, value)) * 255);
+	}
+}
@@ -0,0 +1,369 @@
+package spellAid.util.video;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import spellAid.util.process.ProcessTree;
+
+/**
+ * This class renders a video by encoding pieces of it at the same time, so
+ * that a machine with many cores renders it faster than one ffmpeg process
+ * would.
+ *
+ * The source is first cut into segments without being encoded, which ffmpeg
+ * can only do at keyframes, so each segment starts with a whole picture.
+ * The segments are then encoded with the same options, each by its own
+ * FFmpegRender, on a pool with one thread per core shared by every parallel
+ * render. Each encode is given an equal share of the cores, so the encodes
+ * together do not use more threads than there are cores. Like every ffmpeg
+ * process, the encodes wait their turn if too many are running already.
+ * Finally the encoded segments are joined with ffmpeg's concat demuxer,
+ * which copies them into the output without encoding them again.
+ *
+ * Segments are at least MIN_SEGMENT_SECONDS long, as short segments cost
+ * more to start than they save, and there are no more of them than the
+ * ffmpeg processes allowed to run at once. A video too short to split, or
+ * one whose length cannot be found, is rendered by a single FFmpegRender.
+ *
+ * @author Luke Tudor
+ */
+public class ParallelRender implements VideoRender {
+
+	private static final int MIN_SEGMENT_SECONDS = 5;
+
+	private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(CORES, r -> {
+		Thread thread = new Thread(r, "segment encoder");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String source;
+
+	private final List<String> options;
+
+	private final Path output;
+
+	private final Path partial;
+
+	// The encodes of the segments, or the single encode of a short video
+	private final List<VideoRender> renders;
+
+	// The splitting or joining process currently running
+	private Process helper;
+
+	private boolean cancelled;
+
+	private RenderProgress lastProgress;
+
+	// The time reached in each segment, and its encoding speed
+	private long[] segmentTimes;
+
+	private double[] segmentFps;
+
+	private double[] segmentSpeeds;
+
+	/**
+	 * The options are the ffmpeg options put between the input and output
+	 * files, as for FFmpegRender.
+	 */
+	public ParallelRender(String source, List<String> options, String output) {
+		this.source = source;
+		this.options = options;
+		this.output = FileSystems.getDefault().getPath(output);
+		partial = this.output.resolveSibling(FFmpegRender.partialName(this.output.getFileName().toString()));
+		renders = new ArrayList<>();
+		lastProgress = new RenderProgress(0, -1, 0, 0, false);
+	}
+
+	/**
+	 * Returns true if more than one segment can be encoded at a time. Only
+	 * FFmpegRender.MAX_PROCESSES ffmpeg processes may run at once, so with
+	 * fewer than three cores the segments would be encoded one after another.
+	 */
+	public static boolean isUseful() {
+		return FFmpegRender.MAX_PROCESSES > 1;
+	}
+
+	@Override
+	public boolean run(ProgressListener listener) {
+		long duration = probeDuration(source);
+		int segments = (int) Math.min(FFmpegRender.MAX_PROCESSES,
+				duration / (MIN_SEGMENT_SECONDS * 1_000_000L));
+		if (segments <= 1) {
+			return runSingle(listener);
+		}
+
+		Path work;
+		try {
+			work = Files.createTempDirectory(output.toAbsolutePath().getParent(), "segments");
+		} catch (IOException e) {
+			return runSingle(listener);
+		}
+		try {
+			List<Path> pieces = split(work, duration / segments);
+			if (pieces.isEmpty()) {
+				return false;
+			}
+			List<Path> encoded = encode(pieces, work, duration, listener);
+			if (encoded == null || !join(encoded, work)) {
+				return false;
+			}
+			replaceOutput();
+			synchronized (this) {
+				lastProgress = new RenderProgress(duration, duration, lastProgress.getFps(),
+						lastProgress.getSpeed(), true);
+				listener.progressed(lastProgress);
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			deleteAll(work);
+		}
+	}
+
+	@Override
+	public synchronized void cancel() {
+		cancelled = true;
+		for (VideoRender render : renders) {
+			render.cancel();
+		}
+		if (helper != null) {
+			ProcessTree.destroy(helper);
+		}
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public Path getOutput() {
+		return output;
+	}
+
+	@Override
+	public synchronized RenderProgress getLastProgress() {
+		return lastProgress;
+	}
+
+	// Stops the other segments once one has failed, so the render fails sooner
+	private synchronized void stopSegments() {
+		for (VideoRender render : renders) {
+			render.cancel();
+		}
+	}
+
+	private boolean runSingle(ProgressListener listener) {
+		FFmpegRender render = new FFmpegRender(source, options, output.toString());
+		synchronized (this) {
+			if (cancelled) {
+				return false;
+			}
+			renders.add(render);
+		}
+		return render.run(progress -> {
+			synchronized (this) {
+				lastProgress = progress;
+			}
+			listener.progressed(progress);
+		});
+	}
+
+	/*
+	 * Cuts the source into segments of about the given length without
+	 * encoding it. The cuts are moved to the next keyframe, so there may be
+	 * fewer segments than asked for.
+	 */
+	private List<Path> split(Path work, long segmentMicros) throws IOException {
+		boolean split = runHelper(Arrays.asList("ffmpeg", "-y", "-i", source, "-map", "0", "-c", "copy",
+				"-f", "segment", "-segment_time", String.format(Locale.ROOT, "%.3f", segmentMicros / 1e6),
+				"-reset_timestamps", "1", work.resolve("source%03d.mp4").toString()));
+		List<Path> pieces = new ArrayList<>();
+		if (split) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(work, "source*.mp4")) {
+				for (Path file : files) {
+					pieces.add(file);
+				}
+			}
+			pieces.sort(null);
+		}
+		return pieces;
+	}
+
+	/*
+	 * Encodes every segment on the pool and waits for them all. Returns the
+	 * encoded segments in order, or null if any of them failed, in which case
+	 * the others are stopped.
+	 */
+	private List<Path> encode(List<Path> pieces, Path work, long duration, ProgressListener listener) {
+		List<String> segmentOptions = new ArrayList<>(options);
+		segmentOptions.add("-threads");
+		segmentOptions.add(Integer.toString(Math.max(1, CORES / pieces.size())));
+
+		List<Path> encoded = new ArrayList<>();
+		List<Future<Boolean>> results = new ArrayList<>();
+		synchronized (this) {
+			if (cancelled) {
+				return null;
+			}
+			segmentTimes = new long[pieces.size()];
+			segmentFps = new double[pieces.size()];
+			segmentSpeeds = new double[pieces.size()];
+			for (int i = 0; i < pieces.size(); i++) {
+				Path out = work.resolve(String.format("encoded%03d.mp4", i));
+				encoded.add(out);
+				VideoRender render = new FFmpegRender(pieces.get(i).toString(), segmentOptions, out.toString());
+				renders.add(render);
+				int segment = i;
+				results.add(POOL.submit(() -> render.run(
+						progress -> segmentProgressed(segment, progress, duration, listener))));
+			}
+		}
+
+		boolean succeeded = true;
+		for (Future<Boolean> result : results) {
+			try {
+				succeeded &= result.get();
+			} catch (InterruptedException | ExecutionException e) {
+				succeeded = false;
+			}
+			if (!succeeded) {
+				stopSegments();
+			}
+		}
+		return succeeded ? encoded : null;
+	}
+
+	// Adds up the progress of every segment into the progress of the whole video
+	private synchronized void segmentProgressed(int segment, RenderProgress progress, long duration,
+			ProgressListener listener) {
+		if (progress.isFinished()) {
+			segmentFps[segment] = 0;
+			segmentSpeeds[segment] = 0;
+			return;
+		}
+		segmentTimes[segment] = progress.getOutTimeMicros();
+		segmentFps[segment] = progress.getFps();
+		segmentSpeeds[segment] = progress.getSpeed();
+
+		long time = 0;
+		double fps = 0;
+		double speed = 0;
+		for (int i = 0; i < segmentTimes.length; i++) {
+			time += segmentTimes[i];
+			fps += segmentFps[i];
+			speed += segmentSpeeds[i];
+		}
+		lastProgress = new RenderProgress(time, duration, fps, speed, false);
+		listener.progressed(lastProgress);
+	}
+
+	// Joins the encoded segments, in order, by copying them into one file
+	private boolean join(List<Path> encoded, Path work) throws IOException {
+		List<String> list = new ArrayList<>();
+		for (Path segment : encoded) {
+			list.add("file '" + segment.toAbsolutePath().toString().replace("'", "'\\''") + "'");
+		}
+		Path listFile = work.resolve("segments.txt");
+		Files.write(listFile, list, StandardCharsets.UTF_8);
+		return runHelper(Arrays.asList("ffmpeg", "-y", "-f", "concat", "-safe", "0",
+				"-i", listFile.toString(), "-c", "copy", partial.toString()));
+	}
+
+	// Runs a splitting or joining step, which can be cancelled while it runs
+	private boolean runHelper(List<String> command) {
+		if (!FFmpegRender.acquireProcess(this)) {
+			return false;
+		}
+		try {
+			return runHelperProcess(command);
+		} finally {
+			FFmpegRender.releaseProcess();
+		}
+	}
+
+	private boolean runHelperProcess(List<String> command) {
+		Process process;
+		synchronized (this) {
+			if (cancelled) {
+				return false;
+			}
+			try {
+				process = new ProcessBuilder(command).redirectErrorStream(true)
+						.redirectOutput(new File("/dev/null")).start();
+			} catch (IOException e) {
+				return false;
+			}
+			helper = process;
+		}
+		try {
+			return process.waitFor() == 0 && !isCancelled();
+		} catch (InterruptedException e) {
+			cancel();
+			return false;
+		} finally {
+			synchronized (this) {
+				helper = null;
+			}
+		}
+	}
+
+	private void replaceOutput() throws IOException {
+		try {
+			Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	// Uses ffprobe to find the length of the video in microseconds, or 0 if it cannot
+	private static long probeDuration(String video) {
+		try {
+			Process ffprobe = new ProcessBuilder("ffprobe", "-v", "error", "-show_entries",
+					"format=duration", "-of", "default=noprint_wrappers=1:nokey=1", video).start();
+			String line;
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(ffprobe.getInputStream(), StandardCharsets.UTF_8))) {
+				line = reader.readLine();
+			}
+			ffprobe.waitFor();
+			return line == null ? 0 : (long) (Double.parseDouble(line.trim()) * 1e6);
+		} catch (IOException | InterruptedException | NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private void deleteAll(Path work) {
+		try {
+			Files.deleteIfExists(partial);
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(work)) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			}
+			Files.deleteIfExists(work);
+		} catch (IOException e) {}
+	}
+}
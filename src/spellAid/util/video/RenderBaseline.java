@@ -0,0 +1,62 @@
+package spellAid.util.video;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class remembers how long one ffmpeg process takes to render each
+ * second of video, so that a parallel render can say how much faster it was.
+ * The time is saved next to the cached videos, so a parallel render can be
+ * compared with a render by one process done in an earlier session.
+ *
+ * The file is small, but it is still read and written off the GUI thread,
+ * by whichever thread finishes a render.
+ *
+ * @author Luke Tudor
+ */
+public class RenderBaseline {
+
+	private static final Path BASELINE_FILE = Paths.get("videos", ".cache", "baseline");
+
+	// Seconds taken per second of video, 0 if not known, or -1 if not read yet
+	private static double secondsPerVideoSecond = -1;
+
+	private RenderBaseline() {}
+
+	/**
+	 * Returns the seconds one process took to render each second of video the
+	 * last time a video was rendered by one process, or 0 if none has been.
+	 */
+	public static synchronized double get() {
+		if (secondsPerVideoSecond < 0) {
+			secondsPerVideoSecond = 0;
+			try {
+				List<String> lines = Files.readAllLines(BASELINE_FILE, StandardCharsets.UTF_8);
+				if (!lines.isEmpty()) {
+					secondsPerVideoSecond = Math.max(0, Double.parseDouble(lines.get(0).trim()));
+				}
+			} catch (IOException | NumberFormatException e) {}
+		}
+		return secondsPerVideoSecond;
+	}
+
+	/**
+	 * Saves the time taken by a render done by one process.
+	 */
+	public static synchronized void record(double seconds, double videoSeconds) {
+		if (seconds <= 0 || videoSeconds <= 0) {
+			return;
+		}
+		secondsPerVideoSecond = seconds / videoSeconds;
+		try {
+			Files.createDirectories(BASELINE_FILE.getParent());
+			Files.write(BASELINE_FILE, Collections.singleton(Double.toString(secondsPerVideoSecond)),
+					StandardCharsets.UTF_8);
+		} catch (IOException e) {}
+	}
+}
@@ -0,0 +1,151 @@
+package spellAid.util.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps a directory of reward videos that have already been
+ * rendered, so that asking for the same settings again plays the earlier
+ * render straight away instead of encoding the video again.
+ *
+ * Each file is named after a hash of the source video and the ffmpeg
+ * options, which are always written the same way for the same settings, see
+ * VideoSettings. The source video's size and modification time are part of
+ * the hash, so replacing the source never plays an old render. When the
+ * directory grows past its size limit, the least recently used videos are
+ * deleted.
+ *
+ * @author Luke Tudor
+ */
+public class RenderCache {
+
+	private static final Path CACHE_DIR = Paths.get("videos", ".cache");
+
+	// Around twenty renders of the one minute reward video
+	private static final long MAX_CACHE_BYTES = 200L * 1024 * 1024;
+
+	private static final String SUFFIX = ".mp4";
+
+	private static RenderCache defaultCache;
+
+	// File name -> file size, kept in least recently used first order
+	private final LinkedHashMap<String, Long> entries;
+
+	private long totalBytes;
+
+	private RenderCache() {
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+		loadEntries();
+	}
+
+	public static synchronized RenderCache getDefault() {
+		if (defaultCache == null) {
+			defaultCache = new RenderCache();
+		}
+		return defaultCache;
+	}
+
+	/**
+	 * Returns the rendered video for the settings, or null if it has not
+	 * been rendered yet.
+	 */
+	public synchronized Path getCached(String source, VideoSettings settings) {
+		String name = fileName(source, settings);
+		if (entries.get(name) == null) {
+			return null;
+		}
+		Path file = CACHE_DIR.resolve(name);
+		if (!file.toFile().exists()) {
+			totalBytes -= entries.remove(name);
+			return null;
+		}
+		// Touch the file so that the usage order survives a restart
+		file.toFile().setLastModified(System.currentTimeMillis());
+		return file;
+	}
+
+	/**
+	 * Returns the file a render of the settings should be written to, which
+	 * is given to add() once the render has finished.
+	 */
+	public Path fileFor(String source, VideoSettings settings) throws IOException {
+		Files.createDirectories(CACHE_DIR);
+		return CACHE_DIR.resolve(fileName(source, settings));
+	}
+
+	/**
+	 * Adds a finished render to the cache, deleting the least recently used
+	 * videos if the cache is over its limit. The video just added is kept
+	 * even if it is bigger than the limit on its own.
+	 */
+	public synchronized void add(Path file) {
+		String name = file.getFileName().toString();
+		Long old = entries.put(name, file.toFile().length());
+		if (old != null) {
+			totalBytes -= old;
+		}
+		totalBytes += entries.get(name);
+		evict();
+	}
+
+	// Deletes least recently used files until the cache is under its limit
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (totalBytes > MAX_CACHE_BYTES && entries.size() > 1) {
+			Map.Entry<String, Long> eldest = it.next();
+			try {
+				Files.deleteIfExists(CACHE_DIR.resolve(eldest.getKey()));
+			} catch (IOException e) {}
+			totalBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	// Reads the files left by earlier runs, oldest first
+	private synchronized void loadEntries() {
+		File[] files = CACHE_DIR.toFile().listFiles((dir, name) -> name.endsWith(SUFFIX)
+				&& !name.endsWith(".partial" + SUFFIX));
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			entries.put(file.getName(), file.length());
+			totalBytes += file.length();
+		}
+		evict();
+	}
+
+	/*
+	 * The name of a cached file is the SHA-1 of the source video and the
+	 * options, so the same settings are always found in the same place.
+	 */
+	private static String fileName(String source, VideoSettings settings) {
+		File sourceFile = new File(source);
+		String key = source + "\n" + sourceFile.length() + "\n" + sourceFile.lastModified()
+				+ "\n" + settings;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.append(SUFFIX).toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
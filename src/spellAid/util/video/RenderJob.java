@@ -0,0 +1,102 @@
+package spellAid.util.video;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import spellAid.util.video.VideoRender.ProgressListener;
+
+/**
+ * A render waiting in, or being run by, the RenderScheduler. Everyone who
+ * asked for the same render shares the one job, and is told about its
+ * progress.
+ *
+ * @author Luke Tudor
+ */
+public class RenderJob implements Runnable {
+
+	private final VideoRender render;
+
+	private final List<ProgressListener> listeners;
+
+	private final CompletableFuture<Boolean> result;
+
+	private final RenderScheduler scheduler;
+
+	private long started;
+
+	private long finished;
+
+	RenderJob(VideoRender render, RenderScheduler scheduler) {
+		this.render = render;
+		this.scheduler = scheduler;
+		listeners = new CopyOnWriteArrayList<>();
+		result = new CompletableFuture<>();
+	}
+
+	void addListener(ProgressListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void run() {
+		boolean rendered = false;
+		try {
+			synchronized (this) {
+				started = System.nanoTime();
+			}
+			rendered = render.run(progress -> {
+				for (ProgressListener listener : listeners) {
+					listener.progressed(progress);
+				}
+			});
+		} finally {
+			synchronized (this) {
+				finished = System.nanoTime();
+			}
+			scheduler.finished(this);
+			result.complete(rendered);
+		}
+	}
+
+	/**
+	 * Cancels the render for everyone sharing it. A job still waiting is
+	 * taken out of the queue without being started.
+	 */
+	public void cancel() {
+		render.cancel();
+		if (scheduler.unqueue(this)) {
+			result.complete(false);
+		}
+	}
+
+	public VideoRender getRender() {
+		return render;
+	}
+
+	/**
+	 * Completes with true if the video was rendered, or false if it failed
+	 * or was cancelled.
+	 */
+	public CompletableFuture<Boolean> getResult() {
+		return result;
+	}
+
+	/**
+	 * Returns true once the render has been taken off the queue and started.
+	 */
+	public synchronized boolean isStarted() {
+		return started != 0;
+	}
+
+	/**
+	 * Returns the number of seconds the render ran for, not counting the time
+	 * it waited in the queue.
+	 */
+	public synchronized double getSecondsTaken() {
+		if (started == 0) {
+			return 0;
+		}
+		return ((finished == 0 ? System.nanoTime() : finished) - started) / 1e9;
+	}
+}
@@ -0,0 +1,85 @@
+package spellAid.util.video;
+
+/**
+ * How far an FFmpegRender has got, as last reported by ffmpeg. Times are in
+ * microseconds of video, so that progress is exact however large the output
+ * file grows.
+ *
+ * @author Luke Tudor
+ */
+public class RenderProgress {
+
+	private final long outTimeMicros;
+
+	private final long durationMicros;
+
+	private final double fps;
+
+	private final double speed;
+
+	private final boolean finished;
+
+	public RenderProgress(long outTimeMicros, long durationMicros, double fps, double speed,
+			boolean finished) {
+		this.outTimeMicros = outTimeMicros;
+		this.durationMicros = durationMicros;
+		this.fps = fps;
+		this.speed = speed;
+		this.finished = finished;
+	}
+
+	/**
+	 * Returns the fraction of the video encoded so far, from 0 to 1, or -1 if
+	 * the length of the video is not known.
+	 */
+	public double getFraction() {
+		if (finished) {
+			return 1;
+		}
+		if (durationMicros <= 0) {
+			return -1;
+		}
+		return Math.min(1, (double) outTimeMicros / durationMicros);
+	}
+
+	/**
+	 * Returns the number of seconds the render should still take, worked out
+	 * from the video left to encode and the current encoding speed, or -1 if
+	 * it is not known yet.
+	 */
+	public double getSecondsLeft() {
+		if (finished) {
+			return 0;
+		}
+		if (durationMicros <= 0 || speed <= 0) {
+			return -1;
+		}
+		return Math.max(0, durationMicros - outTimeMicros) / 1e6 / speed;
+	}
+
+	public long getOutTimeMicros() {
+		return outTimeMicros;
+	}
+
+	public long getDurationMicros() {
+		return durationMicros;
+	}
+
+	/**
+	 * Returns the number of frames encoded per second of real time.
+	 */
+	public double getFps() {
+		return fps;
+	}
+
+	/**
+	 * Returns how many seconds of video are encoded per second of real time.
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+}
@@ -0,0 +1,92 @@
+package spellAid.util.video;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import spellAid.util.video.VideoRender.ProgressListener;
+
+/**
+ * This class runs every video render of the application, so that making
+ * videos never takes so much of the machine that quizzes stop responding.
+ *
+ * Renders are run by a small, fixed number of threads, and wait in a
+ * bounded queue until a thread is free. When the queue is full, no more
+ * renders are accepted until one finishes. A render asked for while the same
+ * render, writing the same output file, is already waiting or running is not
+ * started again: the asker shares the job already there. How many ffmpeg
+ * processes run at once is limited separately, see FFmpegRender.
+ *
+ * @author Luke Tudor
+ */
+public class RenderScheduler {
+
+	private static final int RUNNING_JOBS = 2;
+
+	private static final int WAITING_JOBS = 4;
+
+	private static RenderScheduler defaultScheduler;
+
+	private final ThreadPoolExecutor executor;
+
+	// Output file -> the job writing it, while it is waiting or running
+	private final Map<Path, RenderJob> jobs;
+
+	private RenderScheduler() {
+		executor = new ThreadPoolExecutor(RUNNING_JOBS, RUNNING_JOBS, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(WAITING_JOBS), r -> {
+					Thread thread = new Thread(r, "render scheduler");
+					thread.setDaemon(true);
+					return thread;
+				});
+		jobs = new HashMap<>();
+	}
+
+	public static synchronized RenderScheduler getDefault() {
+		if (defaultScheduler == null) {
+			defaultScheduler = new RenderScheduler();
+		}
+		return defaultScheduler;
+	}
+
+	/**
+	 * Queues the render, or joins the job already rendering the same output,
+	 * and tells the listener about its progress. Returns the job, or null if
+	 * the queue is full.
+	 */
+	public synchronized RenderJob submit(VideoRender render, ProgressListener listener) {
+		RenderJob job = jobs.get(render.getOutput());
+		if (job != null) {
+			job.addListener(listener);
+			return job;
+		}
+
+		job = new RenderJob(render, this);
+		job.addListener(listener);
+		try {
+			executor.execute(job);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+		jobs.put(render.getOutput(), job);
+		return job;
+	}
+
+	// Called by a job once it has finished, so the same render can be asked for again
+	synchronized void finished(RenderJob job) {
+		jobs.remove(job.getRender().getOutput(), job);
+	}
+
+	// Takes a job that has not started out of the queue. Returns false if it had started.
+	synchronized boolean unqueue(RenderJob job) {
+		if (!executor.remove(job)) {
+			return false;
+		}
+		jobs.remove(job.getRender().getOutput(), job);
+		return true;
+	}
+}
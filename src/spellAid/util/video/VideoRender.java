@@ -0,0 +1,44 @@
+package spellAid.util.video;
+
+import java.nio.file.Path;
+
+/**
+ * One render of a video by ffmpeg, which can report its progress and be
+ * cancelled.
+ *
+ * @author Luke Tudor
+ */
+public interface VideoRender {
+
+	/**
+	 * Told about the progress of a render, on a thread running it.
+	 */
+	public interface ProgressListener {
+		void progressed(RenderProgress progress);
+	}
+
+	/**
+	 * Renders the video and waits for it to finish, telling the listener
+	 * about its progress as it goes. Returns true if the video was rendered,
+	 * or false if ffmpeg could not be run, failed or was cancelled.
+	 */
+	boolean run(ProgressListener listener);
+
+	/**
+	 * Stops the render without waiting for it to stop. This can be called
+	 * from any thread, before or during the render.
+	 */
+	void cancel();
+
+	boolean isCancelled();
+
+	/**
+	 * Returns the file the video is written to once it has been rendered.
+	 */
+	Path getOutput();
+
+	/**
+	 * Returns the progress last reported.
+	 */
+	RenderProgress getLastProgress();
+}
@@ -0,0 +1,104 @@
+package spellAid.util.video;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The changes made to the reward video: its contrast, brightness and
+ * saturation, whether its colours are inverted, and its frame rate. Values
+ * are rounded to two decimal places, which is finer than can be seen, so
+ * that settings that look the same are the same and share a render.
+ *
+ * @author Luke Tudor
+ */
+public class VideoSettings {
+
+	private final double contrast;
+
+	private final double brightness;
+
+	private final double saturation;
+
+	private final boolean negate;
+
+	private final double fps;
+
+	public VideoSettings(double contrast, double brightness, double saturation, boolean negate, double fps) {
+		this.contrast = round(contrast);
+		this.brightness = round(brightness);
+		this.saturation = round(saturation);
+		this.negate = negate;
+		this.fps = round(fps);
+	}
+
+	public double getContrast() {
+		return contrast;
+	}
+
+	public double getBrightness() {
+		return brightness;
+	}
+
+	public double getSaturation() {
+		return saturation;
+	}
+
+	public boolean isNegate() {
+		return negate;
+	}
+
+	public double getFps() {
+		return fps;
+	}
+
+	/**
+	 * Returns the ffmpeg filter graph, for example
+	 * "eq=contrast=1.00:brightness=0.00:saturation=1.00,negate". The same
+	 * settings always give the same text.
+	 */
+	public String getFilterGraph() {
+		String graph = "eq=contrast=" + format(contrast) + ":brightness=" + format(brightness)
+				+ ":saturation=" + format(saturation);
+		return negate ? graph + ",negate" : graph;
+	}
+
+	/**
+	 * Returns the ffmpeg options that make these changes, one per element.
+	 */
+	public List<String> toOptions() {
+		List<String> options = new ArrayList<>();
+		options.add("-vf");
+		options.add(getFilterGraph());
+		options.add("-r");
+		options.add(format(fps));
+		return options;
+	}
+
+	// Formatted the same way whatever the default locale is
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 100) / 100.0;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof VideoSettings)) {
+			return false;
+		}
+		return toOptions().equals(((VideoSettings) other).toOptions());
+	}
+
+	@Override
+	public int hashCode() {
+		return toOptions().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return String.join(" ", toOptions());
+	}
+}
@@ -1,6 +1,6 @@
 ; This script represents the festival NZ voice, slowed down a bit so it is more understandable
+; The text to say is supplied by the caller, e.g. through text2wave -eval
 ; Author: Luke Tudor
 
 (voice_akl_nz_jdt_diphone)
 (Parameter.set 'Duration_Stretch 1.5)
-(SayText (read))